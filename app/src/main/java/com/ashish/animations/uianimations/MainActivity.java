@@ -9,6 +9,7 @@ import android.widget.ArrayAdapter;
 import android.widget.ListView;
 
 import com.ashish.ui.activity.CardDeckActivity;
+import com.ashish.ui.view.CardDeckAdapterView;
 
 public class MainActivity extends AppCompatActivity implements AdapterView.OnItemClickListener {
 
@@ -25,6 +26,10 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
         ArrayAdapter<String> adapter = new ArrayAdapter<String>(this, R.layout.choice_item, R.id.choice_item, choices);
         view.setAdapter(adapter);
         view.setOnItemClickListener(this);
+
+        // Inflate the first cards of the deck while the user picks a choice, so opening the deck does not
+        // inflate them on the UI thread
+        CardDeckAdapterView.warmUp(this, R.layout.card_deck_item, 0, 3);
     }
 
     @Override
@@ -33,6 +38,7 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
             case 0:
                 // Card Deck Adapter View
                 Intent intent = new Intent(this, CardDeckActivity.class);
+                intent.putExtra(CardDeckActivity.EXTRA_LAUNCH_NANOS, System.nanoTime());
                 this.startActivity(intent);
         }
     }
@@ -2,29 +2,52 @@ package com.ashish.ui.activity;
 
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.util.Log;
+
+import com.ashish.animations.uianimations.BuildConfig;
 
 import com.ashish.animations.uianimations.R;
 import com.ashish.ui.adapter.CardDeckAdapter;
+import com.ashish.ui.data.CardPageSource;
+import com.ashish.ui.data.PagedCardList;
 import com.ashish.ui.view.CardDeckAdapterView;
+import com.ashish.ui.view.SwipeFrameMetrics;
 
 public class CardDeckActivity extends AppCompatActivity {
 
+    private static final String TAG = "CardDeckActivity";
+
+    /**
+     * {@link System#nanoTime()} at which the deck was asked for, the time to first card is measured from it
+     */
+    public static final String EXTRA_LAUNCH_NANOS = "com.ashish.ui.activity.extra.LAUNCH_NANOS";
+
     private CardDeckAdapterView mCardAdapterView;
     private CardDeckAdapter mAdapter;
 
-    private String[] dataSet = {
-            "Item 1",
-            "Item 2",
-            "Item 3",
-            "Item 4",
-            "Item 5",
-            "Item 6",
-            "Item 7",
-            "Item 8",
-            "Item 9",
-            "Item 10",
-            "Item 11",
-            "Item 12",
+    private PagedCardList mPagedList;
+
+    // Number of cards of the sample deck, the cards are read in pages so the deck is never held in memory
+    private static final int SAMPLE_CARD_COUNT = 1000000;
+
+    /**
+     * Generates the cards of the sample deck, a real deck would read them from a database or a file with
+     * {@link com.ashish.ui.data.SQLiteCardPageSource} or {@link com.ashish.ui.data.FileCardPageSource}
+     */
+    private static final CardPageSource sSampleSource = new CardPageSource() {
+        @Override
+        public int getCount() {
+            return SAMPLE_CARD_COUNT;
+        }
+
+        @Override
+        public int loadPage(int startPosition, String[] page) {
+            int count = Math.min(page.length, SAMPLE_CARD_COUNT - startPosition);
+            for (int i = 0; i < count; i++) {
+                page[i] = "Item " + (startPosition + i + 1);
+            }
+            return count;
+        }
     };
 
     @Override
@@ -32,9 +55,38 @@ public class CardDeckActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_card_deck);
 
-        mAdapter = new CardDeckAdapter(this, dataSet);
+        mPagedList = new PagedCardList(sSampleSource);
+        mAdapter = new CardDeckAdapter(this, mPagedList);
         mCardAdapterView = (CardDeckAdapterView) findViewById(R.id.detail_card_view);
+        if (savedInstanceState == null && getIntent().hasExtra(EXTRA_LAUNCH_NANOS)) {
+            mCardAdapterView.setFirstCardStartNanos(getIntent().getLongExtra(EXTRA_LAUNCH_NANOS, 0));
+        }
+        // The deck starts at the 1st card, or at the card it showed before if it is recreated
         mCardAdapterView.setAdapter(mAdapter);
-        mCardAdapterView.setSelection(0);
+        // The next and previous cards are bound in idle time, inflate the views that were not warmed up off
+        // the UI thread meanwhile
+        mCardAdapterView.inflateInBackground(R.layout.card_deck_item, 0, 3);
+        if (BuildConfig.DEBUG) {
+            mCardAdapterView.setStatsEnabled(true);
+            mCardAdapterView.setOnSwipeMetricsListener(new CardDeckAdapterView.OnSwipeMetricsListener() {
+                @Override
+                public void onSwipeMetrics(SwipeFrameMetrics metrics) {
+                    Log.d(TAG, metrics.toString());
+                    Log.d(TAG, mCardAdapterView.getStats().toString());
+                }
+            });
+            mCardAdapterView.setOnFirstCardDrawnListener(new CardDeckAdapterView.OnFirstCardDrawnListener() {
+                @Override
+                public void onFirstCardDrawn(long timeToFirstCardNanos) {
+                    Log.d(TAG, "Time to first card: " + timeToFirstCardNanos / 1000000f + "ms");
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mPagedList.close();
     }
 }
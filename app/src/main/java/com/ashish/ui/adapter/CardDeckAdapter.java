@@ -1,66 +1,413 @@
 package com.ashish.ui.adapter;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.text.Layout;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
-import android.widget.TextView;
+import android.widget.ImageView;
 
 import com.ashish.animations.uianimations.R;
+import com.ashish.ui.data.PagedCardList;
+import com.ashish.ui.image.CardImageLoader;
+import com.ashish.ui.text.CardTextLayoutCache;
+import com.ashish.ui.view.CardDeckAdapterView;
+import com.ashish.ui.view.CardDeckDiff;
+import com.ashish.ui.view.CardTextView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Created by ashishgupta on 11/7/15.
  */
-public class CardDeckAdapter extends BaseAdapter {
+public class CardDeckAdapter extends BaseAdapter implements CardDeckDiff.Observable, CardDeckAdapterView.PrefetchAdapter,
+        ComponentCallbacks2 {
 
     private static class ViewHolder {
-        TextView text;
+        CardTextView text;
+        ImageView image;
     }
 
-    private String[] mDataSet;
+    /**
+     * Cards are the same card when their text is the same, so a card whose text changed is a new card
+     */
+    private static final CardDeckDiff.ItemCallback<String> DEFAULT_ITEM_CALLBACK = new CardDeckDiff.ItemCallback<String>() {
+        @Override
+        public Object getKey(String item) {
+            return item;
+        }
+
+        @Override
+        public boolean areContentsTheSame(String oldItem, String newItem) {
+            return true;
+        }
+    };
+
+    private static HandlerThread sDiffThread;
+    private static Handler sDiffHandler;
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    // Read by the diff thread, only replaced on the UI thread
+    private volatile String[] mDataSet;
+    // Ids of the items of mDataSet. Items kept by submitList keep their id.
+    private long[] mItemIds;
+    private long mNextItemId;
+    // Read by the diff thread, only replaced on the UI thread
+    private volatile CardDeckDiff.ItemCallback<String> mItemCallback = DEFAULT_ITEM_CALLBACK;
+    private final ArrayList<CardDeckDiff.Observer> mDiffObservers = new ArrayList<>();
+    // Latest list given to submitList and its generation, guarded by the adapter. The diff thread only computes
+    // the diff of the latest list, so a burst of submissions is applied once.
+    private String[] mSubmittedList;
+    private int mSubmitGeneration;
+    private boolean isDiffScheduled;
+    private PagedCardList mPagedList;
+    private CardImageLoader mImageLoader;
     private Context mContext;
     private LayoutInflater inflater;
+    // Range of positions shown with a placeholder because their page was not loaded yet
+    private int mFirstPlaceholderPosition = Integer.MAX_VALUE;
+    private int mLastPlaceholderPosition = -1;
+    // Layouts of the card texts, created with the paint of the 1st text card bound
+    private CardTextLayoutCache mTextLayoutCache;
+    private int mTextHorizontalPadding;
+    // Window of the card deck view whose texts are laid out ahead of time, and the width of its cards
+    private int mPrefetchStart;
+    private int mPrefetchEnd = -1;
+    private int mPrefetchCardWidth;
+    // Pages the paged list keeps, restored on the next bind after it was trimmed. 0 if it is not trimmed.
+    private int mUntrimmedMaxPages;
 
     public CardDeckAdapter(Context context, String[] dataSet) {
         this.mContext = context;
-        mDataSet = dataSet;
+        // A null data set is an empty deck, submitList can still fill it
+        mDataSet = dataSet != null ? dataSet : new String[0];
+        mItemIds = new long[mDataSet.length];
+        for (int i = 0; i < mDataSet.length; i++) {
+            mItemIds[i] = mNextItemId++;
+        }
+        inflater = LayoutInflater.from(context);
+    }
+
+    /**
+     * Creates an adapter over a paged list, cards whose page is not loaded yet show a placeholder until it is
+     * @param context
+     * @param pagedList
+     */
+    public CardDeckAdapter(Context context, PagedCardList pagedList) {
+        this.mContext = context;
+        mPagedList = pagedList;
         inflater = LayoutInflater.from(context);
+        mPagedList.setListener(mPagedListListener);
+    }
+
+    /**
+     * Shows the items as photo cards, every item being the path of an image file. The images are decoded at the
+     * size of the cards in background. The card deck view binds the cards around the one on display ahead of
+     * time, so their images are loaded before they are swiped in. It should be set before the adapter is given
+     * to the card deck view.
+     * @param imageLoader
+     */
+    public void setImageLoader(CardImageLoader imageLoader) {
+        mImageLoader = imageLoader;
+    }
+
+    /**
+     * Sets how the items of the lists given to {@link #submitList(String[])} are matched. By default items are
+     * matched by their text.
+     * @param itemCallback
+     */
+    public void setItemCallback(CardDeckDiff.ItemCallback<String> itemCallback) {
+        mItemCallback = itemCallback;
+    }
+
+    /**
+     * Replaces the items by the given list. The difference with the current items is computed on a background
+     * thread, then the adapter takes the new list on the UI thread and sends the diff to its diff observers, so
+     * the card deck view only updates the cards that changed. When lists are submitted faster than they are
+     * diffed, only the latest one is applied. Only for adapters created with an array of items.
+     * @param dataSet
+     */
+    public void submitList(String[] dataSet) {
+        if (mPagedList != null) {
+            throw new IllegalStateException("submitList is not supported by adapters over a paged list");
+        }
+        synchronized (this) {
+            mSubmittedList = dataSet;
+            mSubmitGeneration++;
+            if (isDiffScheduled) {
+                return;
+            }
+            isDiffScheduled = true;
+        }
+        getDiffHandler().post(mDiffRunnable);
+    }
+
+    private static synchronized Handler getDiffHandler() {
+        if (sDiffHandler == null) {
+            sDiffThread = new HandlerThread("CardDeckDiffer");
+            sDiffThread.start();
+            sDiffHandler = new Handler(sDiffThread.getLooper());
+        }
+        return sDiffHandler;
+    }
+
+    /**
+     * Diffs the latest submitted list against the current items, on the diff thread
+     */
+    private final Runnable mDiffRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final String[] newList;
+            final int generation;
+            synchronized (CardDeckAdapter.this) {
+                newList = mSubmittedList;
+                generation = mSubmitGeneration;
+                isDiffScheduled = false;
+            }
+            final String[] oldList = mDataSet;
+            final CardDeckDiff diff = CardDeckDiff.calculate(Arrays.asList(oldList), Arrays.asList(newList), mItemCallback);
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    applyDiff(oldList, newList, generation, diff);
+                }
+            });
+        }
+    };
+
+    private void applyDiff(String[] oldList, String[] newList, int generation, CardDeckDiff diff) {
+        synchronized (this) {
+            if (generation != mSubmitGeneration) {
+                // A newer list was submitted, its diff is computed or will be
+                return;
+            }
+            mSubmittedList = null;
+        }
+        if (oldList != mDataSet) {
+            // The items changed while the diff was computed (e.g. submitted lists applied out of order)
+            submitList(newList);
+            return;
+        }
+        long[] itemIds = new long[newList.length];
+        for (int i = 0; i < newList.length; i++) {
+            int oldPosition = diff.getOldPosition(i);
+            itemIds[i] = oldPosition >= 0 ? mItemIds[oldPosition] : mNextItemId++;
+        }
+        mDataSet = newList;
+        mItemIds = itemIds;
+        prefetchTextLayouts();
+        for (int i = 0; i < mDiffObservers.size(); i++) {
+            mDiffObservers.get(i).onDataSetDiff(diff);
+        }
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void registerDiffObserver(CardDeckDiff.Observer observer) {
+        mDiffObservers.add(observer);
+    }
+
+    @Override
+    public void unregisterDiffObserver(CardDeckDiff.Observer observer) {
+        mDiffObservers.remove(observer);
     }
 
     @Override
     public int getCount() {
+        if (mPagedList != null) {
+            return mPagedList.getCount();
+        }
         if (mDataSet != null) {
             return mDataSet.length;
         }
         return 0;
     }
 
+    /**
+     * The cards of a paged list are only re-bound when their page gets loaded, the card deck view keeps the
+     * other cards as they are. Items of an array keep their id across {@link #submitList(String[])}.
+     */
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
     @Override
     public long getItemId(int position) {
-        return position;
+        if (mPagedList != null) {
+            return position;
+        }
+        return mItemIds[position];
     }
 
     @Override
     public Object getItem(int position) {
+        if (mPagedList != null) {
+            return mPagedList.get(position);
+        }
         return mDataSet[position];
     }
 
+    /**
+     * Releases the cached card content in stages: the text layouts from
+     * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}, the decoded images once the UI is hidden and the pages of
+     * the paged list but the ones around the cards on display once the app is in background. Caches fill up again
+     * as cards are bound, the paged list keeps its pages again from the next bind. The card deck view passes the
+     * levels it gets on once it dropped the card views it released, whose images are then no longer displayed, so
+     * only the images of the cards it keeps bound stay in memory.
+     * @param level
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW && mTextLayoutCache != null) {
+            mTextLayoutCache.clear();
+        }
+        if (level >= TRIM_MEMORY_UI_HIDDEN && mImageLoader != null) {
+            mImageLoader.clearMemoryCache();
+        }
+        if (level >= TRIM_MEMORY_BACKGROUND && mPagedList != null && mUntrimmedMaxPages == 0) {
+            mUntrimmedMaxPages = mPagedList.getMaxPages();
+            mPagedList.setMaxPages(PagedCardList.MIN_PAGES);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         ViewHolder holder = null;
-        String data = mDataSet[position];
+        if (mUntrimmedMaxPages > 0) {
+            mPagedList.setMaxPages(mUntrimmedMaxPages);
+            mUntrimmedMaxPages = 0;
+        }
+        String data = (String) getItem(position);
 
         if (convertView == null) {
-            convertView = inflater.inflate(R.layout.card_deck_item, parent, false);
-            holder = new ViewHolder();
-            holder.text = (TextView) convertView.findViewById(R.id.text);
-            convertView.setTag(holder);
+            convertView = inflater.inflate(mImageLoader != null ? R.layout.card_deck_image_item : R.layout.card_deck_item,
+                    parent, false);
         }
 
         holder = (ViewHolder) convertView.getTag();
+        if (holder == null) {
+            // The convert view may have been inflated in background by the card deck view
+            holder = new ViewHolder();
+            holder.text = (CardTextView) convertView.findViewById(R.id.text);
+            holder.image = (ImageView) convertView.findViewById(R.id.image);
+            convertView.setTag(holder);
+        }
 
-        holder.text.setText(data);
+        if (data == null) {
+            mFirstPlaceholderPosition = Math.min(mFirstPlaceholderPosition, position);
+            mLastPlaceholderPosition = Math.max(mLastPlaceholderPosition, position);
+        }
+        if (mImageLoader != null) {
+            mImageLoader.display(holder.image, data, getCardWidth(parent), getCardHeight(parent));
+        } else {
+            CharSequence text = data == null ? mContext.getText(R.string.card_loading) : data;
+            holder.text.setTextLayout(getTextLayoutCache(holder.text).get(text, getTextWidth(getCardWidth(parent))));
+        }
         return convertView;
     }
+
+    /**
+     * Lays out the texts of the window of the card deck view in background, at the width of its cards
+     */
+    @Override
+    public void onPrefetchWindow(int firstPosition, int lastPosition, int cardWidth, int cardHeight) {
+        mPrefetchStart = firstPosition;
+        mPrefetchEnd = lastPosition;
+        mPrefetchCardWidth = cardWidth;
+        prefetchTextLayouts();
+    }
+
+    private void prefetchTextLayouts() {
+        if (mImageLoader != null || mTextLayoutCache == null || mPrefetchCardWidth <= 0) {
+            return;
+        }
+        mTextLayoutCache.cancelPrefetch();
+        int width = getTextWidth(mPrefetchCardWidth);
+        int end = Math.min(mPrefetchEnd, getCount() - 1);
+        for (int position = mPrefetchStart; position <= end; position++) {
+            String data = (String) getItem(position);
+            if (data != null) {
+                mTextLayoutCache.prefetch(data, width);
+            }
+        }
+    }
+
+    /**
+     * Returns the text layout cache, created with the paint of the given card text the 1st time
+     * @param text
+     */
+    private CardTextLayoutCache getTextLayoutCache(CardTextView text) {
+        if (mTextLayoutCache == null) {
+            mTextLayoutCache = new CardTextLayoutCache(text.getPaint(), Layout.Alignment.ALIGN_CENTER,
+                    CardTextLayoutCache.DEFAULT_MAX_LAYOUTS);
+            mTextHorizontalPadding = text.getPaddingLeft() + text.getPaddingRight();
+            // The window was sent before any card was bound
+            prefetchTextLayouts();
+        }
+        return mTextLayoutCache;
+    }
+
+    /**
+     * Card texts fill their card but for their padding
+     * @param cardWidth
+     */
+    private int getTextWidth(int cardWidth) {
+        return cardWidth - mTextHorizontalPadding;
+    }
+
+    /**
+     * Cards fill the card deck view, before the view is laid out they are assumed to fill the screen
+     * @param parent
+     */
+    private int getCardWidth(ViewGroup parent) {
+        int width = parent.getWidth();
+        return width > 0 ? width : mContext.getResources().getDisplayMetrics().widthPixels;
+    }
+
+    private int getCardHeight(ViewGroup parent) {
+        int height = parent.getHeight();
+        return height > 0 ? height : mContext.getResources().getDisplayMetrics().heightPixels;
+    }
+
+    private final PagedCardList.Listener mPagedListListener = new PagedCardList.Listener() {
+        @Override
+        public void onCountChanged(int count) {
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public void onPageLoaded(int startPosition, int count) {
+            if (startPosition <= mPrefetchEnd && startPosition + count > mPrefetchStart) {
+                prefetchTextLayouts();
+            }
+            // Pages read ahead of time do not change any card on display
+            if (startPosition > mLastPlaceholderPosition || startPosition + count <= mFirstPlaceholderPosition) {
+                return;
+            }
+            // Cards of other pages that still show a placeholder are not re-bound, so the range is only
+            // cleared once the loaded page covers all of it
+            if (startPosition <= mFirstPlaceholderPosition && startPosition + count > mLastPlaceholderPosition) {
+                mFirstPlaceholderPosition = Integer.MAX_VALUE;
+                mLastPlaceholderPosition = -1;
+            }
+            notifyDataSetChanged();
+        }
+    };
 }
@@ -0,0 +1,21 @@
+package com.ashish.ui.data;
+
+/**
+ * Local store the cards of a {@link PagedCardList} are read from, one page at a time.
+ * Both methods are called on the loader thread of the list, never on the UI thread.
+ */
+public interface CardPageSource {
+
+    /**
+     * Returns the total number of cards in the store
+     */
+    int getCount();
+
+    /**
+     * Reads the cards starting at the given position
+     * @param startPosition Position of the 1st card to read
+     * @param page Array to read the cards into, the source reads up to page.length cards
+     * @return The number of cards read
+     */
+    int loadPage(int startPosition, String[] page);
+}
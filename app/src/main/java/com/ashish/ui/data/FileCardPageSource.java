@@ -0,0 +1,121 @@
+package com.ashish.ui.data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads the cards from a UTF-8 text file with one card per line. The file is scanned once to find where
+ * every page starts, so only one offset per page is kept in memory and a page is read with a single seek.
+ */
+public class FileCardPageSource implements CardPageSource {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+    private final int mPageSize;
+    // File offset of the 1st line of every page
+    private long[] mPageOffsets;
+    private int mCount = -1;
+
+    /**
+     * @param file
+     * @param pageSize Page size of the {@link PagedCardList} reading from this source. Pages can only be read from
+     * a multiple of it, the list fails to load its pages otherwise.
+     */
+    public FileCardPageSource(File file, int pageSize) {
+        mFile = file;
+        mPageSize = pageSize;
+    }
+
+    @Override
+    public int getCount() {
+        if (mCount < 0) {
+            try {
+                indexPages();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read " + mFile, e);
+            }
+        }
+        return mCount;
+    }
+
+    @Override
+    public int loadPage(int startPosition, String[] page) {
+        if (startPosition % mPageSize != 0) {
+            throw new IllegalArgumentException("Page read at " + startPosition + ", the page size of the source is "
+                    + mPageSize + " and should be the one of the list");
+        }
+        if (startPosition >= getCount()) {
+            return 0;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(mFile);
+            in.getChannel().position(mPageOffsets[startPosition / mPageSize]);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(in.getChannel()), UTF_8));
+            int count = 0;
+            String line;
+            while (count < page.length && (line = reader.readLine()) != null) {
+                page[count++] = line;
+            }
+            return count;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + mFile, e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void indexPages() throws IOException {
+        long[] pageOffsets = new long[16];
+        int count = 0;
+        long offset = 0;
+        boolean isLineStart = true;
+        byte[] buffer = new byte[64 * 1024];
+        InputStream in = new FileInputStream(mFile);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    if (isLineStart) {
+                        if (count % mPageSize == 0) {
+                            int page = count / mPageSize;
+                            if (page == pageOffsets.length) {
+                                pageOffsets = Arrays.copyOf(pageOffsets, page * 2);
+                            }
+                            pageOffsets[page] = offset + i;
+                        }
+                        count++;
+                        isLineStart = false;
+                    }
+                    if (buffer[i] == '\n') {
+                        isLineStart = true;
+                    }
+                }
+                offset += read;
+            }
+        } finally {
+            closeQuietly(in);
+        }
+        mPageOffsets = pageOffsets;
+        mCount = count;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Nothing to do, the file was only read
+        }
+    }
+}
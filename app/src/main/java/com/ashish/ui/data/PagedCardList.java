@@ -0,0 +1,227 @@
+package com.ashish.ui.data;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+/**
+ * Memory bounded list of cards read from a {@link CardPageSource} in fixed size pages. Pages are read on a
+ * background thread when a card of the page is first asked for, and only a limited number of pages is kept:
+ * once over the limit, the pages furthest from the last card asked for are dropped. The list holds the total
+ * count of cards but never all of them, so it can back decks with millions of cards.
+ * <p>
+ * All the methods must be called on the UI thread, the listener is also notified there.
+ */
+public class PagedCardList {
+
+    public interface Listener {
+        /**
+         * Called once the number of cards was read from the source
+         * @param count
+         */
+        void onCountChanged(int count);
+
+        /**
+         * Called when a page of cards was read from the source
+         * @param startPosition Position of the 1st card of the page
+         * @param count Number of cards in the page
+         */
+        void onPageLoaded(int startPosition, int count);
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int DEFAULT_MAX_PAGES = 8;
+    // The page asked for and both of its neighbours always fit
+    public static final int MIN_PAGES = 3;
+
+    private final CardPageSource mSource;
+    private final int mPageSize;
+    private volatile int mMaxPages;
+    private final SparseArray<String[]> mPages = new SparseArray<>();
+    // Pages whose read is queued on the loader thread
+    private final SparseBooleanArray mRequestedPages = new SparseBooleanArray();
+    private Listener mListener;
+    private int mCount;
+    // Page of the last card asked for, read by the loader thread to skip pages that are no longer needed
+    private volatile int mAccessedPage;
+    private boolean isClosed;
+
+    private final HandlerThread mLoaderThread;
+    private final Handler mLoaderHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    public PagedCardList(CardPageSource source) {
+        this(source, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * Creates the list and starts reading the number of cards from the source
+     * @param source
+     * @param pageSize Number of cards read at once. Sources that index their pages, like {@link SQLiteCardPageSource}
+     * and {@link FileCardPageSource}, must be created with the same page size.
+     * @param maxPages Maximum number of pages kept in memory, at least 3
+     */
+    public PagedCardList(CardPageSource source, int pageSize, int maxPages) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize should be at least 1");
+        }
+        mSource = source;
+        mPageSize = pageSize;
+        mMaxPages = Math.max(MIN_PAGES, maxPages);
+        mLoaderThread = new HandlerThread("PagedCardList");
+        mLoaderThread.start();
+        mLoaderHandler = new Handler(mLoaderThread.getLooper());
+        mLoaderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final int count = mSource.getCount();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onCountLoaded(count);
+                    }
+                });
+            }
+        });
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Returns the number of cards, or 0 until it was read from the source
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Changes the maximum number of pages kept in memory. Pages over the new limit are dropped right away.
+     * @param maxPages At least 3
+     */
+    public void setMaxPages(int maxPages) {
+        mMaxPages = Math.max(MIN_PAGES, maxPages);
+        trimPages();
+    }
+
+    public int getMaxPages() {
+        return mMaxPages;
+    }
+
+    /**
+     * Returns the number of pages currently in memory
+     */
+    public int getLoadedPageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * Returns the card at the given position, or null if its page is not in memory. In that case the page is
+     * read in background and the listener is notified once it is loaded. The neighbouring page is also read
+     * ahead of time once the position gets close to it.
+     * @param position
+     */
+    public String get(int position) {
+        int page = position / mPageSize;
+        int offset = position - page * mPageSize;
+        mAccessedPage = page;
+        String[] items = mPages.get(page);
+        if (items == null) {
+            requestPage(page);
+        }
+        if (offset >= mPageSize - mPageSize / 4) {
+            requestPage(page + 1);
+        } else if (offset < mPageSize / 4) {
+            requestPage(page - 1);
+        }
+        return items == null ? null : items[offset];
+    }
+
+    /**
+     * Stops the loader thread and drops all the pages. The list cannot be used afterwards.
+     */
+    public void close() {
+        isClosed = true;
+        mLoaderThread.quit();
+        mMainHandler.removeCallbacksAndMessages(null);
+        mPages.clear();
+        mRequestedPages.clear();
+    }
+
+    private void requestPage(final int page) {
+        if (isClosed || page < 0 || page * mPageSize >= mCount
+                || mPages.get(page) != null || mRequestedPages.get(page)) {
+            return;
+        }
+        mRequestedPages.put(page, true);
+        final int startPosition = page * mPageSize;
+        final int size = Math.min(mPageSize, mCount - startPosition);
+        mLoaderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                String[] items = null;
+                int count = 0;
+                // Skip the pages that would be dropped as soon as they are loaded
+                if (Math.abs(page - mAccessedPage) <= mMaxPages / 2) {
+                    items = new String[size];
+                    count = mSource.loadPage(startPosition, items);
+                }
+                final String[] loadedItems = items;
+                final int loadedCount = count;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(page, loadedItems, loadedCount);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onCountLoaded(int count) {
+        if (isClosed) {
+            return;
+        }
+        mCount = count;
+        if (mListener != null) {
+            mListener.onCountChanged(count);
+        }
+    }
+
+    private void onPageLoaded(int page, String[] items, int count) {
+        mRequestedPages.delete(page);
+        if (isClosed || items == null) {
+            return;
+        }
+        mPages.put(page, items);
+        trimPages();
+        if (mPages.get(page) != null && mListener != null) {
+            mListener.onPageLoaded(page * mPageSize, count);
+        }
+    }
+
+    /**
+     * Drops the pages furthest from the last card asked for until the number of pages is within the limit
+     */
+    private void trimPages() {
+        while (mPages.size() > mMaxPages) {
+            int furthestIndex = 0;
+            int furthestDistance = -1;
+            for (int i = 0; i < mPages.size(); i++) {
+                int distance = Math.abs(mPages.keyAt(i) - mAccessedPage);
+                if (distance > furthestDistance) {
+                    furthestDistance = distance;
+                    furthestIndex = i;
+                }
+            }
+            mPages.removeAt(furthestIndex);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.ashish.ui.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Reads the cards from a column of a SQLite table, in rowid order. The rowids of the table are scanned once to
+ * find the rowid every page starts at, so a page is read with a single rowid range query that does not step over
+ * the rows before it, and the cursor of a page only holds that page.
+ */
+public class SQLiteCardPageSource implements CardPageSource {
+
+    private static final String[] ROWID_COLUMNS = {"rowid"};
+    private static final String PAGE_SELECTION = "rowid >= ?";
+
+    private final SQLiteDatabase mDatabase;
+    private final String mTable;
+    private final String[] mColumns;
+    private final int mPageSize;
+    // Rowid of the 1st row of every page
+    private long[] mPageRowIds;
+    private int mCount = -1;
+
+    /**
+     * @param database
+     * @param table
+     * @param column Column holding the text of the cards
+     * @param pageSize Page size of the {@link PagedCardList} reading from this source. Pages can only be read from
+     * a multiple of it, the list fails to load its pages otherwise.
+     */
+    public SQLiteCardPageSource(SQLiteDatabase database, String table, String column, int pageSize) {
+        mDatabase = database;
+        mTable = table;
+        mColumns = new String[] {column};
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Counts the rows and finds where every page starts, rows added or removed afterwards are only taken into
+     * account by the next call
+     */
+    @Override
+    public int getCount() {
+        indexPages();
+        return mCount;
+    }
+
+    @Override
+    public int loadPage(int startPosition, String[] page) {
+        if (mCount < 0) {
+            indexPages();
+        }
+        if (startPosition % mPageSize != 0) {
+            throw new IllegalArgumentException("Page read at " + startPosition + ", the page size of the source is "
+                    + mPageSize + " and should be the one of the list");
+        }
+        if (startPosition >= mCount) {
+            return 0;
+        }
+        String[] selectionArgs = {Long.toString(mPageRowIds[startPosition / mPageSize])};
+        Cursor cursor = mDatabase.query(mTable, mColumns, PAGE_SELECTION, selectionArgs, null, null, "rowid",
+                Integer.toString(page.length));
+        try {
+            int count = 0;
+            while (count < page.length && cursor.moveToNext()) {
+                page[count++] = cursor.getString(0);
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void indexPages() {
+        Cursor cursor = mDatabase.query(mTable, ROWID_COLUMNS, null, null, null, null, "rowid");
+        try {
+            int count = cursor.getCount();
+            long[] pageRowIds = new long[(count + mPageSize - 1) / mPageSize];
+            for (int i = 0; i < pageRowIds.length && cursor.moveToPosition(i * mPageSize); i++) {
+                pageRowIds[i] = cursor.getLong(0);
+            }
+            mPageRowIds = pageRowIds;
+            mCount = count;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.ashish.ui.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps a few bitmaps that are no longer displayed nor cached so that their memory can be decoded into again
+ * with {@link BitmapFactory.Options#inBitmap}, instead of allocating a new bitmap for every card.
+ * It is used from the decoding threads and the UI thread.
+ */
+class BitmapPool {
+
+    private final ArrayList<Bitmap> mBitmaps;
+    private final int mMaxSize;
+
+    BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+        mBitmaps = new ArrayList<>(maxSize);
+    }
+
+    /**
+     * Keeps the bitmap for re-use, the oldest bitmap is dropped if the pool is full
+     * @param bitmap
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.isRecycled()) {
+            return;
+        }
+        if (mBitmaps.size() == mMaxSize) {
+            mBitmaps.remove(0);
+        }
+        mBitmaps.add(bitmap);
+    }
+
+    /**
+     * Removes and returns a bitmap the decode described by the options can be decoded into, or null if there
+     * is none. The options must hold the bounds of the image and the sample size.
+     * @param options
+     */
+    synchronized Bitmap get(BitmapFactory.Options options) {
+        for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+            Bitmap candidate = mBitmaps.get(i);
+            if (canDecodeInto(candidate, options)) {
+                mBitmaps.remove(i);
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    synchronized long getByteCount() {
+        long byteCount = 0;
+        for (int i = 0; i < mBitmaps.size(); i++) {
+            byteCount += mBitmaps.get(i).getByteCount();
+        }
+        return byteCount;
+    }
+
+    synchronized void clear() {
+        mBitmaps.clear();
+    }
+
+    private static boolean canDecodeInto(Bitmap candidate, BitmapFactory.Options options) {
+        int sampleSize = Math.max(1, options.inSampleSize);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            // Before KitKat the bitmap must have the exact size of the image and the image cannot be sampled
+            return sampleSize == 1 && candidate.getWidth() == options.outWidth
+                    && candidate.getHeight() == options.outHeight && candidate.getConfig() == options.inPreferredConfig;
+        }
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        return width * height * getBytesPerPixel(options.inPreferredConfig) <= candidate.getAllocationByteCount();
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+}
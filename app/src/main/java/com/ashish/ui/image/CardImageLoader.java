@@ -0,0 +1,364 @@
+package com.ashish.ui.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.LruCache;
+import android.view.View;
+import android.widget.ImageView;
+
+import com.ashish.animations.uianimations.R;
+
+import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads card images into image views without decoding on the UI thread. Images are decoded on a background
+ * executor at the size of the card rather than at full resolution, and kept in a memory cache bounded in bytes.
+ * The decoded thumbnails are also stored in a disk cache, so an image is only decoded at full resolution once.
+ * Bitmaps that are dropped from the memory cache and no longer displayed are decoded into again. An image view
+ * that leaves the window, e.g. a card view dropped by the deck, lets go of its bitmap and loads it again if it
+ * comes back.
+ * <p>
+ * {@link #display(ImageView, String, int, int)} must be called on the UI thread.
+ */
+public class CardImageLoader {
+
+    private static final int DECODE_THREAD_COUNT = 2;
+    private static final int BITMAP_POOL_SIZE = 4;
+    private static final long DEFAULT_DISK_CACHE_BYTES = 32 * 1024 * 1024;
+    private static final String DISK_CACHE_DIRECTORY = "card_thumbnails";
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final ThumbnailDiskCache mDiskCache;
+    private final BitmapPool mBitmapPool = new BitmapPool(BITMAP_POOL_SIZE);
+    private final ExecutorService mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Number of image views (or pending deliveries) each bitmap is displayed in. Such bitmaps are not
+    // decoded into when they leave the memory cache, they go to the pool once they are no longer displayed.
+    private final IdentityHashMap<Bitmap, int[]> mDisplayedBitmaps = new IdentityHashMap<>();
+    private final IdentityHashMap<Bitmap, Boolean> mUncachedBitmaps = new IdentityHashMap<>();
+
+    /**
+     * Creates a loader whose memory cache uses an 8th of the memory available to the app
+     * @param context
+     */
+    public CardImageLoader(Context context) {
+        this(context, (int) (Runtime.getRuntime().maxMemory() / 8), DEFAULT_DISK_CACHE_BYTES);
+    }
+
+    /**
+     * @param context
+     * @param memoryCacheBytes Maximum size of the decoded bitmaps kept in memory
+     * @param diskCacheBytes Maximum size of the thumbnails stored on disk
+     */
+    public CardImageLoader(Context context, int memoryCacheBytes, long diskCacheBytes) {
+        mMemoryCache = new LruCache<String, Bitmap>(memoryCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                onBitmapUncached(oldValue);
+            }
+        };
+        mDiskCache = new ThumbnailDiskCache(new File(context.getCacheDir(), DISK_CACHE_DIRECTORY), diskCacheBytes);
+        mExecutor = Executors.newFixedThreadPool(DECODE_THREAD_COUNT, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Decoding should not compete with the UI thread for the CPU
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "CardImageLoader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Displays the image file in the image view, decoded to fit the given size. The image is shown right away
+     * if it is in the memory cache, otherwise the view is cleared and the image is loaded in background.
+     * Any load still pending for the view is cancelled.
+     * @param view
+     * @param path Path of the image file, or null to only clear the view
+     * @param width Width the image is displayed at
+     * @param height Height the image is displayed at
+     */
+    public void display(ImageView view, String path, int width, int height) {
+        Request request = (Request) view.getTag(R.id.card_image_request);
+        if (request == null) {
+            request = new Request(view);
+            view.setTag(R.id.card_image_request, request);
+        }
+        String key = path == null ? null : getKey(path, width, height);
+        if (key != null && key.equals(request.key)) {
+            return;
+        }
+        request.clear();
+        request.isReleased = false;
+        request.key = key;
+        if (key == null) {
+            view.setImageDrawable(null);
+            return;
+        }
+        request.path = path;
+        request.width = width;
+        request.height = height;
+        Bitmap bitmap = getPinned(key);
+        if (bitmap != null) {
+            request.setBitmap(bitmap);
+            return;
+        }
+        view.setImageDrawable(null);
+        request.task = mExecutor.submit(new LoadTask(request, key, path, width, height));
+    }
+
+    /**
+     * Drops all the bitmaps of the memory cache and the bitmaps kept for re-use
+     */
+    public void clearMemoryCache() {
+        mMemoryCache.evictAll();
+        mBitmapPool.clear();
+    }
+
+    /**
+     * Returns the size of the bitmaps the loader holds on to: the memory cache, the bitmaps kept for re-use and the
+     * bitmaps that left the cache but are still displayed
+     */
+    public long getRetainedByteCount() {
+        long byteCount = mMemoryCache.size() + mBitmapPool.getByteCount();
+        synchronized (mDisplayedBitmaps) {
+            for (Bitmap bitmap : mUncachedBitmaps.keySet()) {
+                byteCount += bitmap.getByteCount();
+            }
+        }
+        return byteCount;
+    }
+
+    /**
+     * Stops the decoding threads. The loader cannot be used afterwards.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+        clearMemoryCache();
+    }
+
+    private static String getKey(String path, int width, int height) {
+        return path + '@' + width + 'x' + height;
+    }
+
+    private Bitmap load(String key, String path, int width, int height) {
+        File thumbnail = mDiskCache.get(key);
+        if (thumbnail != null) {
+            Bitmap bitmap = decode(thumbnail.getPath(), 0, 0);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+        Bitmap bitmap = decode(path, width, height);
+        if (bitmap != null) {
+            mDiskCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes the image sampled down to the smallest size that still covers the given size
+     * @param path
+     * @param width 0 to decode at full size
+     * @param height 0 to decode at full size
+     */
+    private Bitmap decode(String path, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSampleSize(options.outWidth, options.outHeight, width, height);
+        // Photos are opaque, they do not need an alpha channel
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inMutable = true;
+        options.inBitmap = mBitmapPool.get(options);
+        try {
+            return BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be decoded into after all
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(path, options);
+        }
+    }
+
+    private static int getSampleSize(int imageWidth, int imageHeight, int width, int height) {
+        int sampleSize = 1;
+        if (width <= 0 || height <= 0) {
+            return sampleSize;
+        }
+        while (imageWidth / (sampleSize * 2) >= width && imageHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Returns the cached bitmap pinned, or null if it is not cached. The bitmap is looked up under the lock the
+     * eviction takes, so it cannot go to the pool between the lookup and the pin.
+     * @param key
+     */
+    private Bitmap getPinned(String key) {
+        synchronized (mDisplayedBitmaps) {
+            Bitmap bitmap = mMemoryCache.get(key);
+            if (bitmap != null) {
+                pin(bitmap);
+            }
+            return bitmap;
+        }
+    }
+
+    private void pin(Bitmap bitmap) {
+        synchronized (mDisplayedBitmaps) {
+            int[] count = mDisplayedBitmaps.get(bitmap);
+            if (count == null) {
+                mDisplayedBitmaps.put(bitmap, new int[] {1});
+            } else {
+                count[0]++;
+            }
+        }
+    }
+
+    private void unpin(Bitmap bitmap) {
+        synchronized (mDisplayedBitmaps) {
+            int[] count = mDisplayedBitmaps.get(bitmap);
+            if (count == null || --count[0] > 0) {
+                return;
+            }
+            mDisplayedBitmaps.remove(bitmap);
+            if (mUncachedBitmaps.remove(bitmap) != null) {
+                mBitmapPool.put(bitmap);
+            }
+        }
+    }
+
+    private void onBitmapUncached(Bitmap bitmap) {
+        synchronized (mDisplayedBitmaps) {
+            if (mDisplayedBitmaps.containsKey(bitmap)) {
+                mUncachedBitmaps.put(bitmap, Boolean.TRUE);
+            } else {
+                mBitmapPool.put(bitmap);
+            }
+        }
+    }
+
+    /**
+     * Image currently displayed or loading in an image view, kept in the tag of the view. It releases the image
+     * while the view is detached from the window.
+     */
+    private class Request implements View.OnAttachStateChangeListener {
+        final ImageView view;
+        String key;
+        String path;
+        int width;
+        int height;
+        Future<?> task;
+        Bitmap bitmap;
+        // Indicates the image was released when the view left the window, it is loaded again when it comes back
+        boolean isReleased;
+
+        Request(ImageView view) {
+            this.view = view;
+            view.addOnAttachStateChangeListener(this);
+        }
+
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            if (isReleased) {
+                isReleased = false;
+                display(view, path, width, height);
+            }
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            if (key != null) {
+                clear();
+                isReleased = true;
+            }
+        }
+
+        void setBitmap(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            view.setImageBitmap(bitmap);
+        }
+
+        /**
+         * Cancels the pending load and releases the displayed bitmap
+         */
+        void clear() {
+            if (task != null) {
+                task.cancel(false);
+                task = null;
+            }
+            if (bitmap != null) {
+                view.setImageDrawable(null);
+                unpin(bitmap);
+                bitmap = null;
+            }
+            key = null;
+        }
+    }
+
+    private class LoadTask implements Runnable {
+        private final Request mRequest;
+        private final String mKey;
+        private final String mPath;
+        private final int mWidth;
+        private final int mHeight;
+
+        LoadTask(Request request, String key, String path, int width, int height) {
+            mRequest = request;
+            mKey = key;
+            mPath = path;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void run() {
+            final Bitmap bitmap = load(mKey, mPath, mWidth, mHeight);
+            if (bitmap == null) {
+                return;
+            }
+            // Pinned until it is delivered, so that it does not go to the pool if it leaves the cache meanwhile
+            pin(bitmap);
+            mMemoryCache.put(mKey, bitmap);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mKey.equals(mRequest.key) && mRequest.bitmap == null) {
+                        mRequest.task = null;
+                        mRequest.setBitmap(bitmap);
+                    } else {
+                        // The view moved on to another image
+                        unpin(bitmap);
+                    }
+                }
+            });
+        }
+    }
+}
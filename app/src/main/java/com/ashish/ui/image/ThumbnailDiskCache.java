@@ -0,0 +1,141 @@
+package com.ashish.ui.image;
+
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Keeps the decoded card thumbnails as JPEG files in a directory, so that an image is only decoded at full
+ * resolution once. The total size of the files is bounded, once over the limit the least recently used
+ * thumbnails are deleted. It is only used from the decoding threads.
+ */
+class ThumbnailDiskCache {
+
+    private static final int JPEG_QUALITY = 85;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    // Total size of the files in the directory, -1 until the directory was scanned
+    private long mSize = -1;
+
+    ThumbnailDiskCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the file of the thumbnail, or null if it is not cached
+     * @param key
+     */
+    synchronized File get(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        // The modification time orders the thumbnails by last use
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Stores the thumbnail, deleting the least recently used ones if the cache is over its size
+     * @param key
+     * @param bitmap
+     */
+    synchronized void put(String key, Bitmap bitmap) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        ensureSize();
+        File file = getFile(key);
+        File tempFile = new File(mDirectory, file.getName() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            out.close();
+            out = null;
+            long previousLength = file.length();
+            if (tempFile.renameTo(file)) {
+                mSize += file.length() - previousLength;
+            }
+        } catch (IOException e) {
+            // The thumbnail is only an optimization, it is decoded again next time
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing to do, the file is deleted below
+                }
+            }
+            tempFile.delete();
+        }
+        trim();
+    }
+
+    private void ensureSize() {
+        if (mSize >= 0) {
+            return;
+        }
+        mSize = 0;
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                mSize += file.length();
+            }
+        }
+    }
+
+    private void trim() {
+        if (mSize <= mMaxBytes) {
+            return;
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        // Trim below the limit so that the directory is not listed again on the next put
+        long targetSize = mMaxBytes * 9 / 10;
+        for (int i = 0; i < files.length && mSize > targetSize; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                mSize -= length;
+            }
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, hash(key));
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            char[] chars = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                chars[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+                chars[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+            }
+            return new String(chars);
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.ashish.ui.text;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps the text layouts of cards by text, so that binding a text card does not measure and break its text on the
+ * UI thread. Layouts are built at the width of the card text. Texts that are about to be bound can be prefetched,
+ * their layouts are then built on a background thread; a text asked for before its layout is ready is laid out
+ * right away.
+ * <p>
+ * All the layouts have the same width, changing the width drops them. {@link #get(CharSequence, int)},
+ * {@link #prefetch(CharSequence, int)} and {@link #cancelPrefetch()} must be called on the UI thread.
+ */
+public class CardTextLayoutCache {
+
+    public static final int DEFAULT_MAX_LAYOUTS = 32;
+
+    private static HandlerThread sLayoutThread;
+    private static Handler sLayoutHandler;
+
+    // Paint of the layouts built on the UI thread, the background thread measures with its own copy
+    private final TextPaint mPaint;
+    private final TextPaint mBackgroundPaint;
+    private final Layout.Alignment mAlignment;
+    private final LruCache<CharSequence, Layout> mLayouts;
+    // Width of the layouts, layouts of another width found in the cache are stale
+    private volatile int mWidth;
+
+    // Texts to lay out in background, guarded by the queue
+    private final ArrayDeque<CharSequence> mPrefetchQueue = new ArrayDeque<>();
+    private boolean isPrefetchScheduled;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * @param paint Paint of the card text, it is copied so later changes to it are not taken into account
+     * @param alignment
+     * @param maxLayouts Maximum number of layouts kept
+     */
+    public CardTextLayoutCache(TextPaint paint, Layout.Alignment alignment, int maxLayouts) {
+        mPaint = new TextPaint(paint);
+        mBackgroundPaint = new TextPaint(paint);
+        mAlignment = alignment;
+        mLayouts = new LruCache<>(maxLayouts);
+    }
+
+    /**
+     * Returns the layout of the text at the given width, laid out now if it was not prefetched
+     * @param text
+     * @param width Width of the text in pixels
+     */
+    public Layout get(CharSequence text, int width) {
+        setWidth(width);
+        Layout layout = mLayouts.get(text);
+        if (layout != null && layout.getWidth() == width) {
+            mHitCount++;
+            return layout;
+        }
+        mMissCount++;
+        layout = build(text, mPaint, width);
+        mLayouts.put(text, layout);
+        return layout;
+    }
+
+    /**
+     * Lays out the text at the given width on the background thread, unless its layout is already kept
+     * @param text
+     * @param width Width of the text in pixels
+     */
+    public void prefetch(CharSequence text, int width) {
+        if (width <= 0) {
+            return;
+        }
+        setWidth(width);
+        Layout layout = mLayouts.get(text);
+        if (layout != null && layout.getWidth() == width) {
+            return;
+        }
+        synchronized (mPrefetchQueue) {
+            mPrefetchQueue.add(text);
+            if (isPrefetchScheduled) {
+                return;
+            }
+            isPrefetchScheduled = true;
+        }
+        getLayoutHandler().post(mPrefetchRunnable);
+    }
+
+    /**
+     * Drops the texts that are still waiting to be laid out in background
+     */
+    public void cancelPrefetch() {
+        synchronized (mPrefetchQueue) {
+            mPrefetchQueue.clear();
+        }
+    }
+
+    /**
+     * Drops all the layouts and the pending prefetches
+     */
+    public void clear() {
+        cancelPrefetch();
+        mLayouts.evictAll();
+    }
+
+    /**
+     * Returns the number of texts whose layout was ready when they were bound
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Returns the number of texts that were laid out on the UI thread
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public void resetCounters() {
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+
+    private void setWidth(int width) {
+        if (width != mWidth) {
+            mWidth = width;
+            clear();
+        }
+    }
+
+    private Layout build(CharSequence text, TextPaint paint, int width) {
+        return new StaticLayout(text, paint, Math.max(0, width), mAlignment, 1.0f, 0.0f, true);
+    }
+
+    private static synchronized Handler getLayoutHandler() {
+        if (sLayoutHandler == null) {
+            sLayoutThread = new HandlerThread("CardTextLayout", Process.THREAD_PRIORITY_BACKGROUND);
+            sLayoutThread.start();
+            sLayoutHandler = new Handler(sLayoutThread.getLooper());
+        }
+        return sLayoutHandler;
+    }
+
+    /**
+     * Lays out the queued texts one after the other, on the background thread
+     */
+    private final Runnable mPrefetchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                CharSequence text;
+                synchronized (mPrefetchQueue) {
+                    text = mPrefetchQueue.poll();
+                    if (text == null) {
+                        isPrefetchScheduled = false;
+                        return;
+                    }
+                }
+                int width = mWidth;
+                Layout layout = mLayouts.get(text);
+                if (layout == null || layout.getWidth() != width) {
+                    // A layout put after the width changed is stale and laid out again when it is asked for
+                    mLayouts.put(text, build(text, mBackgroundPaint, width));
+                }
+            }
+        }
+    };
+}
@@ -17,24 +17,37 @@ limitations under the License.
 
 package com.ashish.ui.view;
 
-import android.animation.Animator;
-import android.animation.AnimatorSet;
-import android.animation.ObjectAnimator;
-import android.animation.PropertyValuesHolder;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.TypedArray;
 import android.database.DataSetObserver;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.Trace;
 import android.util.AttributeSet;
-import android.view.GestureDetector;
+import android.view.Choreographer;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.VelocityTracker;
 import android.view.ViewConfiguration;
-import android.widget.AbsListView;
+import android.view.ViewGroup;
 import android.widget.Adapter;
 import android.widget.AdapterView;
+import android.widget.FrameLayout;
 
-import junit.framework.Assert;
+import com.ashish.animations.uianimations.R;
+import com.ashish.ui.deck.CardDeckWindow;
 
-import java.util.LinkedList;
+import junit.framework.Assert;
 
 public class CardDeckAdapterView extends AdapterView<Adapter> {
 
@@ -44,576 +57,2388 @@ public class CardDeckAdapterView extends AdapterView<Adapter> {
     private View mViewOnDisplay;
     private View mPreviousViewDisplayed;
     private View mNextViewToDisplay;
-    private GestureDetector mGestureDetector;
+    private VelocityTracker mVelocityTracker;
 
-    private LinkedList<View> mReleasedViews;
+    private CardDeckViewPool mViewPool;
 
     private int mTouchSlop;
     private int mFlingSlop;
-    // Indicates the index of the item in the adapter (the 1st element is at index = 0)
-    private int mVisibleItemIndexInAdapter;
-    // Total number of items in the adapter
-    private int mAdapterDataCount;
+    private int mMaxFlingVelocity;
+    // Flings faster than this move more than one card
+    private int mMultiFlingVelocity;
+    // Number of cards moved by a fling at the maximum fling velocity
+    private int mMaxFlingCardCount;
     private float mDownEventX;
     private float mLastX;
     private boolean isLeftDrag, isRightDrag;
+    // Indicates the touch moved past the touch slop (or caught a card in motion) and the cards follow it
+    private boolean isDragging;
+    // Event time and action of the last event handled. The down event reaches both onInterceptTouchEvent and
+    // onTouchEvent when no child takes it, it is only handled once.
+    private long mLastEventTime = -1;
+    private int mLastEventAction = -1;
+    // Latest touch position not applied to the cards yet, the cards are moved once per frame
+    private float mPendingDragX;
+    private boolean hasPendingDrag;
+    private OnCardDragListener mOnCardDragListener;
+    // Measure specs of the last measure pass, children added later are measured with them
+    private int mWidthMeasureSpec;
+    private int mHeightMeasureSpec;
+    private boolean hasMeasureSpecs;
+    // Indicates that layout requests of the cards being bound should not trigger a layout pass of the deck
+    private boolean mBlockLayoutRequests;
+    // Times the frames of each swipe, only exists while a metrics listener is attached
+    private SwipeFrameRecorder mSwipeFrameRecorder;
+    // Bind and recycle counters, null unless enabled with setStatsEnabled
+    private CardDeckStats mStats;
     private boolean isInAnimation;
-    // Index of item to be shown on the screen (the 1st element in the adapter is at index = size - 1 in the buffer)
-    private int mVisibleItemIndexInBuffer;
-    // Indicates the index of an item in the adapter that needs to be loaded in the buffer (Since it indicates index in adapter it moves from 0 to size - 1)
-    // The items as they are fetched from the adapter (using this index) are added to buffer at 0th position. So, the items that were added first keep moving down
-    // in the buffer
-    private int mNextItemIndexToLoadInBufferFromAdapter;
-
-    private static final int BUFFER_SIZE = 3;
-    private static final float ZOOM_OUT_SCALE_FACTOR = 0.8f;
-    private static final float ZOOM_IN_SCALE_FACTOR = 1.0f;
-    private static final int MAX_RELEASED_VIEWS_SIZE = 1;
+    // Animates every swipe, it is re-used so swiping does not allocate animators
+    private CardDeckAnimator mCardAnimator;
+    // Indicates the moving cards are put on hardware layers during gestures and animations
+    private boolean isHardwareLayersEnabled;
+    // Cards that are currently on a hardware layer
+    private final View[] mLayeredViews = new View[3];
+    // Views for the adapter positions around the item on display. The window is the source of truth for the
+    // position on display and for which view shows which position, the child order is only used for the z-order
+    // (items with higher adapter position are drawn below the items with lower adapter position)
+    private CardDeckWindow<View> mWindow;
+    // Window size set with the attributes or setWindowSize. The window is smaller while memory is trimmed, it
+    // grows back to this size on the next touch.
+    private int mLookBehind;
+    private int mLookAhead;
+    private boolean isWindowTrimmed;
+    // Scratch arrays used to match the buffered views to the items after a data set change
+    private View[] mStaleViews;
+    private View[] mMatchedViews;
+    // Indicates the matched views whose item changed and that have to be bound again
+    private boolean[] mMatchedChanged;
+    // Adapter position of the 1st element of mMatchedViews
+    private int mMatchedFirstPosition;
+    // Indicates the last data set change was already applied from the diff the adapter sent before notifying it
+    private boolean isDiffApplied;
+    // Indicates cards that are offscreen or hidden behind an opaque card are not drawn
+    private boolean isOverdrawCullingEnabled = true;
+    // Number of card draws skipped by culling since the counter was reset
+    private int mCulledDrawCount;
+    // Scratch bounds used to find the cards to cull
+    private final RectF mChildBounds = new RectF();
+    private final RectF mCoverBounds = new RectF();
+    // Indicates the view is attached to a window, the window is only bound once it is
+    private boolean isAttached;
+    // Position to bind once the view is attached and the adapter has items, INVALID_POSITION if there is none.
+    // The item id is used to find the item again if it moved, it is INVALID_ROW_ID if not known.
+    private int mPendingPosition = INVALID_POSITION;
+    private long mPendingItemId = INVALID_ROW_ID;
+    // Cards kept for the riffle in progress: the card that was on display followed by the cards sampled
+    // between it and the target card, in riffle order
+    private final View[] mRiffleViews = new View[RIFFLE_CARD_COUNT + 1];
+    private int mRiffleViewCount;
+    private int mRiffleStep;
+    private boolean isRiffling;
+    private boolean isRiffleForward;
+    // Binds the cards of the window other than the card on display in idle time between frames
+    private CardDeckPrefetcher mPrefetcher;
+    private boolean isPrefetchEnabled;
+    // Indicates the card being bound is bound by the prefetcher
+    private boolean isPrefetchingCard;
+    // Window and card size last sent to a PrefetchAdapter, so that it is only told about changes
+    private int mPrefetchWindowStart = INVALID_POSITION;
+    private int mPrefetchWindowEnd = INVALID_POSITION;
+    private int mPrefetchCardWidth;
+
+    // Worker thread used to inflate card views off the UI thread
+    private static HandlerThread sInflaterThread;
+    private static Handler sInflaterHandler;
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    // Start of the time to first card, the creation of the view unless set otherwise
+    private long mFirstCardStartNanos;
+    // Time from the start until the card on display was first drawn, -1 until then
+    private long mTimeToFirstCardNanos = -1;
+    private OnFirstCardDrawnListener mOnFirstCardDrawnListener;
+
+    private static final int DEFAULT_LOOK_BEHIND = 1;
+    private static final int DEFAULT_LOOK_AHEAD = 1;
+    // Scale of the cards under the card on display and of the card on display, also used by CardDeckLayoutManager
+    static final float ZOOM_OUT_SCALE_FACTOR = 0.8f;
+    static final float ZOOM_IN_SCALE_FACTOR = 1.0f;
+    // Maximum number of cards shown between the card on display and the target card of a riffle
+    static final int RIFFLE_CARD_COUNT = 3;
+    // Riffle steps run on a stiffer spring that starts fast, so a whole riffle lasts about as long as a swipe
+    private static final float RIFFLE_SPRING_FREQUENCY = 60f;
+    private static final float RIFFLE_VELOCITY = 20f;
+    private static final int DEFAULT_MAX_FLING_CARD_COUNT = 100;
+    // Number of items looked at on each side of the expected position of an item, when looking for its id
+    static final int MAX_ITEM_SEARCH_DISTANCE = 100;
+
+    // Maximum number of card views kept by warmUp
+    private static final int MAX_WARM_VIEWS = 6;
+    // Card views inflated by warmUp before any deck exists, handed to the view pool of the next deck created.
+    // Only used on the UI thread.
+    private static final View[] sWarmViews = new View[MAX_WARM_VIEWS];
+    private static final int[] sWarmViewTypes = new int[MAX_WARM_VIEWS];
+    private static int sWarmViewCount;
 
 
     public CardDeckAdapterView(Context context) {
         super(context);
-        init();
+        init(null, 0);
     }
 
     public CardDeckAdapterView(Context context, AttributeSet attrs) {
         super(context, attrs);
-        init();
+        init(attrs, 0);
     }
 
     public CardDeckAdapterView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        init();
+        init(attrs, defStyle);
     }
 
-    private void init() {
+    private void init(AttributeSet attrs, int defStyle) {
+        mFirstCardStartNanos = System.nanoTime();
         ViewConfiguration viewConfiguration = ViewConfiguration.get(getContext());
         mTouchSlop = viewConfiguration.getScaledTouchSlop();
         mFlingSlop = viewConfiguration.getScaledMinimumFlingVelocity();
-        mGestureDetector = new GestureDetector(getContext(), new GestureListener());
-        mReleasedViews = new LinkedList<>();
+        mMaxFlingVelocity = viewConfiguration.getScaledMaximumFlingVelocity();
+        mMultiFlingVelocity = mMaxFlingVelocity / 4;
+        mMaxFlingCardCount = DEFAULT_MAX_FLING_CARD_COUNT;
         isLeftDrag = false;
         isRightDrag = false;
-    }
 
-    @Override
-    public Adapter getAdapter() {
-        return mAdapter;
+        TypedArray a = getContext().obtainStyledAttributes(attrs, R.styleable.CardDeckAdapterView, defStyle, 0);
+        int lookBehind = a.getInt(R.styleable.CardDeckAdapterView_lookBehind, DEFAULT_LOOK_BEHIND);
+        int lookAhead = a.getInt(R.styleable.CardDeckAdapterView_lookAhead, DEFAULT_LOOK_AHEAD);
+        boolean hardwareLayers = a.getBoolean(R.styleable.CardDeckAdapterView_hardwareLayers, false);
+        a.recycle();
+        Assert.assertTrue("lookBehind should be at least 1", lookBehind >= 1);
+        Assert.assertTrue("lookAhead should be at least 1", lookAhead >= 1);
+        mLookBehind = lookBehind;
+        mLookAhead = lookAhead;
+        mWindow = new CardDeckWindow<>(mWindowBinder, lookBehind, lookAhead);
+        mStaleViews = new View[mWindow.getCapacity()];
+        mMatchedViews = new View[mWindow.getCapacity()];
+        mMatchedChanged = new boolean[mWindow.getCapacity()];
+        // A whole window can be released at once (e.g. on setSelection), and a riffle releases the cards it showed
+        // on top of the window, so by default every view type keeps as many views as both hold
+        mViewPool = new CardDeckViewPool(getDefaultRecycledViewCapacity());
+        mPrefetcher = new CardDeckPrefetcher(this, mPrefetchCallback);
+        isPrefetchEnabled = true;
+        mCardAnimator = new CardDeckAnimator(getContext(), animatorListener);
+        setHardwareLayersEnabled(hardwareLayers);
+        adoptWarmViews();
     }
 
-    @Override
-    public void setAdapter(Adapter adapter) {
-        setAdapter(adapter, 0);
+    /**
+     * Enables or disables binding the cards around the card on display in idle time between frames. When it is
+     * disabled, all the cards of the window are bound as soon as the card on display changes. Enabled by default.
+     * @param enabled
+     */
+    public void setPrefetchEnabled(boolean enabled) {
+        isPrefetchEnabled = enabled;
+        if (!enabled) {
+            mPrefetcher.cancel();
+            if (mAdapter != null) {
+                ensureFull();
+            }
+        }
     }
 
-    @Override
-    public View getSelectedView() {
-        throw new UnsupportedOperationException();
+    public boolean isPrefetchEnabled() {
+        return isPrefetchEnabled;
     }
 
-    @Override
-    public void setSelection(int position) {
-        if (mAdapter == null) {
-            return;
+    /**
+     * Enables putting the card on display and its neighbours on hardware layers while they are dragged or
+     * animated, so that moving and scaling them does not redraw their content every frame. The layers are
+     * released once the cards settle. From Lollipop the settle animations also run through
+     * {@link android.view.ViewPropertyAnimator}.
+     * Disabled by default, it only has an effect on hardware accelerated windows.
+     * @param enabled
+     */
+    public void setHardwareLayersEnabled(boolean enabled) {
+        isHardwareLayersEnabled = enabled;
+        mCardAnimator.setUseViewPropertyAnimator(enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP);
+        if (!enabled) {
+            releaseCardLayers();
         }
+    }
 
-        releaseViews();
-
-        mViewOnDisplay = null;
-        mVisibleItemIndexInAdapter = position;
-        if (mVisibleItemIndexInAdapter >= mAdapterDataCount) {
-            mVisibleItemIndexInAdapter = 0; // 1st element in the adapter is the last element in the buffer
-        }
-        initializeStartingBufferIndexes();
+    public boolean isHardwareLayersEnabled() {
+        return isHardwareLayersEnabled;
+    }
 
-        ensureFull(false);
+    /**
+     * Enables skipping the draw of cards that are entirely offscreen (like the previous card at rest) or entirely
+     * covered by an opaque card drawn above them (like the next card at rest). Enabled by default.
+     * @param enabled
+     */
+    public void setOverdrawCullingEnabled(boolean enabled) {
+        isOverdrawCullingEnabled = enabled;
+        invalidate();
+    }
 
-        requestLayout();
+    public boolean isOverdrawCullingEnabled() {
+        return isOverdrawCullingEnabled;
     }
 
-    @Override
-    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-        super.onLayout(changed, left, top, right, bottom);
+    /**
+     * Returns the number of card draws skipped by overdraw culling since the counter was reset, for debugging
+     */
+    public int getCulledDrawCount() {
+        return mCulledDrawCount;
+    }
 
-        for (int i = 0; i < getChildCount(); i++) {
-            View view = getChildAt(i);
-            view.layout(left, top, right, bottom);
-        }
+    public void resetCulledDrawCount() {
+        mCulledDrawCount = 0;
     }
 
-    @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+    /**
+     * Listens to the frame timings of every swipe
+     */
+    public interface OnSwipeMetricsListener {
+        /**
+         * Called once the cards settled after a swipe (or a drag that was released without swiping)
+         * @param metrics Frame timings of the swipe, only valid during this call
+         */
+        void onSwipeMetrics(SwipeFrameMetrics metrics);
+    }
 
-        for (int i = 0; i < getChildCount(); i++) {
-            View child = getChildAt(i);
-            assert child != null;
-            child.measure(widthMeasureSpec, heightMeasureSpec);
+    /**
+     * Sets a listener that is told the frame timings of every swipe. Swipes are only timed while a listener
+     * is set.
+     * @param listener Listener or null to stop timing swipes
+     */
+    public void setOnSwipeMetricsListener(OnSwipeMetricsListener listener) {
+        if (mSwipeFrameRecorder != null) {
+            mSwipeFrameRecorder.cancel();
         }
+        mSwipeFrameRecorder = listener == null ? null : new SwipeFrameRecorder(this, listener);
     }
 
-    @Override
-    public boolean onInterceptTouchEvent(MotionEvent ev) {
-        return handleTouchEvent(ev, false);
+    /**
+     * Adapter that prepares the content of cards off the UI thread before they are bound. The deck tells it which
+     * positions it is about to bind whenever its window or its size changes.
+     */
+    public interface PrefetchAdapter {
+        /**
+         * Called on the UI thread before the cards of the window are bound
+         * @param firstPosition First position of the window
+         * @param lastPosition Last position of the window
+         * @param cardWidth Width of the cards, 0 until the deck is laid out
+         * @param cardHeight Height of the cards, 0 until the deck is laid out
+         */
+        void onPrefetchWindow(int firstPosition, int lastPosition, int cardWidth, int cardHeight);
     }
 
-    @Override
-    public boolean onTouchEvent(MotionEvent event) {
-        return handleTouchEvent(event, true);
+    /**
+     * Listens to the drag of the cards
+     */
+    public interface OnCardDragListener {
+        /**
+         * Called once per frame while the cards follow the touch, after they were moved
+         * @param offset Distance from where the drag started to the touch position applied to the cards in this
+         * frame, negative when dragging to the left
+         */
+        void onCardDrag(float offset);
     }
 
-    private boolean handleTouchEvent(MotionEvent event, boolean isOnTouchEvent) {
-
-        if (isInAnimation) {
-            return isOnTouchEvent;
-        }
-        if (mGestureDetector.onTouchEvent(event)) {
-            return true;
-        }
-        switch(event.getAction()) {
-
-            case MotionEvent.ACTION_DOWN:
-                mDownEventX = event.getX();
-                mLastX = -1;
-                return isOnTouchEvent;
-            case MotionEvent.ACTION_UP:
-            case MotionEvent.ACTION_CANCEL:
-                float movementDiffX = Math.abs(mDownEventX - event.getX());
-                if (movementDiffX > 0 && !isLeftDrag && !isRightDrag) {
-                    animateRestore(mViewOnDisplay);
-                } else if (movementDiffX >= getWidth() / 2) {
-                    if (isLeftDrag && !isRightDrag) {
-                        animateLeftDrag(mViewOnDisplay, mNextViewToDisplay, -getWidth());
-                    } else if (!isLeftDrag && isRightDrag) {
-                        animateRightDrag(mViewOnDisplay, mPreviousViewDisplayed, 0);
-                    }
-                } else if (movementDiffX < getWidth() / 2) {
-                    if (isLeftDrag && !isRightDrag) {
-                        isLeftDrag = false;
-                        isRightDrag = false;
-                        animateRightDrag(mNextViewToDisplay, mViewOnDisplay, 0);
-                    } else if (!isLeftDrag && isRightDrag) {
-                        isLeftDrag = false;
-                        isRightDrag = false;
-                        animateLeftDrag(mPreviousViewDisplayed, mViewOnDisplay, -getWidth());
-                    }
-                }
-                return isOnTouchEvent;
-            case MotionEvent.ACTION_MOVE:
-                float newX = event.getX();
-                int deltaX = (int) (mDownEventX - newX);
-                float ratio = (float) deltaX / getWidth();
-                if (deltaX > 0) {
-                    // Left drag
-                    // There is a possibility that this event is a continuation event to a right drag folowed by left drag in one motion itself
-                    // where the user has dragged past the point where he started motion (down event)
-                    // In that case we need to reset the previous and current screen because they were displaced because of right drag movement
-                    if (isRightDrag) {
-                        mViewOnDisplay.setX(0);
-                        mViewOnDisplay.setScaleX(ZOOM_IN_SCALE_FACTOR);
-                        mViewOnDisplay.setScaleY(ZOOM_IN_SCALE_FACTOR);
-                        mPreviousViewDisplayed.setX(-getWidth());
-                    }
-                    isLeftDrag = true;
-                    isRightDrag = false;
-                    if (mNextViewToDisplay != null) {
-                        mViewOnDisplay.setX(-deltaX);
-                        float scalingFactor = (float) (ZOOM_OUT_SCALE_FACTOR + ((ZOOM_IN_SCALE_FACTOR - ZOOM_OUT_SCALE_FACTOR) * ratio));
-                        mNextViewToDisplay.setScaleX(scalingFactor);
-                        mNextViewToDisplay.setScaleY(scalingFactor);
-                    } else {
-                        isLeftDrag = false;
-                        ratio = (float) deltaX / (10 * getWidth());
-                        float scalingFactor = (ZOOM_IN_SCALE_FACTOR + ratio);
-                        mViewOnDisplay.setScaleX(scalingFactor);
-                        mViewOnDisplay.setScaleY(scalingFactor);
-                    }
-                } else {
-                    // Right drag
-                    // There is a possibility where user first moves left and then moves right and moves right past the point where
-                    // he started left movement. In that case we need to bring current view back to normal nd next view also to normal
-                    // because otherwise because of left movement before this, they were displaced.
-                    if (isLeftDrag) {
-                        // First left movement was done and then in same movement right was done past the initial touch of down event
-                        // that is why delta is < 0
-                        mViewOnDisplay.setX(0);
-                        mNextViewToDisplay.setScaleX(ZOOM_OUT_SCALE_FACTOR);
-                        mNextViewToDisplay.setScaleY(ZOOM_OUT_SCALE_FACTOR);
-                    }
-                    isLeftDrag = false;
-                    isRightDrag = true;
-                    if (mPreviousViewDisplayed != null) {
-                        mPreviousViewDisplayed.setX(-getWidth() - deltaX);
-                        float scalingFactor = (float) (ZOOM_IN_SCALE_FACTOR - ((ZOOM_IN_SCALE_FACTOR - ZOOM_OUT_SCALE_FACTOR) * Math.abs(ratio)));
-                        mViewOnDisplay.setScaleX(scalingFactor);
-                        mViewOnDisplay.setScaleY(scalingFactor);
-                    } else {
-                        isRightDrag = false;
-                        ratio = (float) Math.abs(deltaX) / (10 * getWidth());
-                        float scalingFactor = (float) (ZOOM_IN_SCALE_FACTOR + ratio);
-                        mViewOnDisplay.setScaleX(scalingFactor);
-                        mViewOnDisplay.setScaleY(scalingFactor);
-                    }
-                }
-                mLastX = newX;
-                return true;
-        }
-        return false;
+    public void setOnCardDragListener(OnCardDragListener listener) {
+        mOnCardDragListener = listener;
     }
 
     /**
-     * Animates the restore of the view to its original dimensions after we pull 1st and last item in the list because
-     * as we pull 1st and last item it zooms in.
-     * @param currentView
+     * Listens to the first time a card is drawn
      */
-    private void animateRestore(View currentView) {
-        if (isInAnimation) {
-            return;
-        }
-        isInAnimation = true;
-        PropertyValuesHolder scaleX = PropertyValuesHolder.ofFloat("scaleX", ZOOM_IN_SCALE_FACTOR);
-        PropertyValuesHolder scaleY = PropertyValuesHolder.ofFloat("scaleY", ZOOM_IN_SCALE_FACTOR);
-        PropertyValuesHolder x = PropertyValuesHolder.ofFloat("x", 0);
-        ObjectAnimator zoomInAnimator = ObjectAnimator.ofPropertyValuesHolder(currentView, scaleX, scaleY, x);
+    public interface OnFirstCardDrawnListener {
+        /**
+         * Called when the deck first draws a card, from within the draw pass
+         * @param timeToFirstCardNanos Time from the start set with {@link #setFirstCardStartNanos(long)}, or from the
+         * creation of the view, until the card was drawn
+         */
+        void onFirstCardDrawn(long timeToFirstCardNanos);
+    }
 
-        AnimatorSet s = new AnimatorSet();
-        s.playTogether(zoomInAnimator);
-        s.addListener(animatorListener);
-        s.start();
+    public void setOnFirstCardDrawnListener(OnFirstCardDrawnListener listener) {
+        mOnFirstCardDrawnListener = listener;
     }
 
     /**
-     * Animates the left drag movement to display next element in the list
-     * This method is called for items with index 0 to number of elements - 2
-     * @param currentView
-     * @param nextView
-     * @param finalX
+     * Sets when the time to first card starts, e.g. when the user asked for the deck in the launching activity
+     * @param startNanos Start time in the {@link System#nanoTime()} time base
      */
-    private void animateLeftDrag(View currentView, View nextView, float finalX) {
-        if (isInAnimation) {
-            return;
-        }
-        isInAnimation = true;
-        PropertyValuesHolder x = PropertyValuesHolder.ofFloat("x", finalX);
-        PropertyValuesHolder scaleX = PropertyValuesHolder.ofFloat("scaleX", ZOOM_IN_SCALE_FACTOR);
-        PropertyValuesHolder scaleY = PropertyValuesHolder.ofFloat("scaleY", ZOOM_IN_SCALE_FACTOR);
-        PropertyValuesHolder nextViewX = PropertyValuesHolder.ofFloat("x", 0);
-        ObjectAnimator dragAnimator = ObjectAnimator.ofPropertyValuesHolder(currentView, x);
-        ObjectAnimator zoomInAnimator = ObjectAnimator.ofPropertyValuesHolder(nextView, scaleX, scaleY, nextViewX);
-
-        AnimatorSet s = new AnimatorSet();
-        s.playTogether(dragAnimator, zoomInAnimator);
-        s.addListener(animatorListener);
-        s.start();
+    public void setFirstCardStartNanos(long startNanos) {
+        mFirstCardStartNanos = startNanos;
+    }
 
+    /**
+     * Returns the time from the start until the deck first drew a card in nanoseconds, or -1 if no card was
+     * drawn yet
+     */
+    public long getTimeToFirstCardNanos() {
+        return mTimeToFirstCardNanos;
     }
 
     /**
-     * Animates right drag to display the previous element. This method is called for
-     * items with index = 1 to total number of elements in adapter - 1
-     * @param currentView
-     * @param prevView
-     * @param finalX
+     * Puts the card on display and its neighbours on hardware layers for the length of a gesture or animation
      */
-    private void animateRightDrag(View currentView, View prevView, float finalX) {
-        if (isInAnimation) {
+    private void promoteCardLayers() {
+        if (!isHardwareLayersEnabled || mLayeredViews[0] != null || !isHardwareAccelerated()) {
             return;
         }
-        isInAnimation = true;
-        PropertyValuesHolder x = PropertyValuesHolder.ofFloat("x", finalX);
-        PropertyValuesHolder scaleX = PropertyValuesHolder.ofFloat("scaleX", ZOOM_OUT_SCALE_FACTOR);
-        PropertyValuesHolder scaleY = PropertyValuesHolder.ofFloat("scaleY", ZOOM_OUT_SCALE_FACTOR);
-        ObjectAnimator dragAnimator = ObjectAnimator.ofPropertyValuesHolder(prevView, x);
-        ObjectAnimator zoomOutAnimator = ObjectAnimator.ofPropertyValuesHolder(currentView, scaleX, scaleY);
-
-        AnimatorSet s = new AnimatorSet();
-        s.playTogether(dragAnimator, zoomOutAnimator);
-        s.addListener(animatorListener);
-        s.start();
+        promoteCardLayer(0, mViewOnDisplay);
+        promoteCardLayer(1, mPreviousViewDisplayed);
+        promoteCardLayer(2, mNextViewToDisplay);
     }
 
-    public void setAdapter(Adapter adapter, int initialPosition) {
-        if (this.mAdapter != null) {
-            this.mAdapter.unregisterDataSetObserver(mDataSetObserver);
+    private void promoteCardLayer(int index, View view) {
+        if (view != null) {
+            view.setLayerType(LAYER_TYPE_HARDWARE, null);
+            mLayeredViews[index] = view;
         }
+    }
 
-        Assert.assertNotNull("adapter should not be null", adapter);
-
-        this.mAdapter = adapter;
-        mAdapterDataCount = adapter.getCount();
-
-        this.mAdapter.registerDataSetObserver(mDataSetObserver);
-
-        setSelection(initialPosition);
+    private void releaseCardLayers() {
+        for (int i = 0; i < mLayeredViews.length; i++) {
+            if (mLayeredViews[i] != null) {
+                mLayeredViews[i].setLayerType(LAYER_TYPE_NONE, null);
+                mLayeredViews[i] = null;
+            }
+        }
     }
 
     /**
-     * This method only keeps the buffer full all the time unless the buffer size is bigger than the size of adapter
-     * @param addAtTop Indicates whether we need to add page/item to top of scree or at the bottom. Adding to the
-     *                 top of screen means adding at the last position in the buffer
+     * Inflates views for an adapter view type on a worker thread and keeps them to be re-used, so that binding
+     * those cards later on the UI thread does not have to inflate them. The adapter has to accept a convert
+     * view that it did not create itself. The views are inflated with the theme of the deck but without the
+     * factories of its inflater, which are not thread safe, so e.g. AppCompat does not substitute its widgets.
+     * Views are kept up to the capacity of their view type.
+     * @param layoutResId Layout the adapter inflates for the view type
+     * @param viewType View type as returned by {@link Adapter#getItemViewType(int)}
+     * @param count Number of views to keep, views already kept for the view type (e.g. warmed up) count towards it
      */
-    private void ensureFull(boolean addAtTop) {
-        int index = mNextItemIndexToLoadInBufferFromAdapter;
-        if (addAtTop) {
-            index = mVisibleItemIndexInAdapter - 1;
+    public void inflateInBackground(final int layoutResId, final int viewType, int count) {
+        if (viewType >= 0 && viewType < mViewPool.getViewTypeCount()) {
+            // Views that were warmed up already count
+            int scrapCount = mViewPool.getScrapCount(viewType);
+            count = Math.min(count - scrapCount, mViewPool.getCapacity(viewType) - scrapCount);
         }
-        while (((!addAtTop && index < mAdapter.getCount()) || (addAtTop && index >= 0)) && getChildCount() < BUFFER_SIZE) {
-            View releasedView = mReleasedViews == null || mReleasedViews.size() == 0? null: mReleasedViews.removeFirst();
-            View view = mAdapter.getView(index, releasedView, this);
-            if (releasedView != null && view != releasedView) {
-                addReleasedView(releasedView);
-            }
-            if (index < mVisibleItemIndexInAdapter) {
-                view.setX(-getWidth());
-                view.setScaleX(ZOOM_IN_SCALE_FACTOR);
-                view.setScaleY(ZOOM_IN_SCALE_FACTOR);
-            } else if (index > mVisibleItemIndexInAdapter) {
-                view.setX(0);
-                view.setScaleX(ZOOM_OUT_SCALE_FACTOR);
-                view.setScaleY(ZOOM_OUT_SCALE_FACTOR);
-            }
-            LayoutParams params = view.getLayoutParams();
-            if (params == null) {
-                params =
-                        new AbsListView.LayoutParams(LayoutParams.FILL_PARENT,
-                                LayoutParams.WRAP_CONTENT, 0);
-            }
-            if (view != releasedView) {
-                addViewInLayout(view, addAtTop ? -1: 0, params, true);
-            } else {
-                attachViewToParent(view, addAtTop? -1: 0, params);
-            }
-
-            requestLayout();
-
-            index = addAtTop? index - 1 : index + 1;
+        if (count <= 0) {
+            return;
         }
+        final int inflateCount = count;
+        final Context context = getContext();
+        getInflaterHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                LayoutInflater inflater = new BasicInflater(context);
+                // Only gives the inflated views layout params, the deck itself is not touched off the UI thread
+                FrameLayout parent = new FrameLayout(context);
+                final View[] views = new View[inflateCount];
+                for (int i = 0; i < inflateCount; i++) {
+                    views[i] = inflater.inflate(layoutResId, parent, false);
+                }
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (View view : views) {
+                            addInflatedView(viewType, view);
+                        }
+                    }
+                });
+            }
+        });
+    }
 
-        // addAtTop is true only when we scrolled through the list all the way and then we scrolled back
-        // to the top of the list
-        if (!addAtTop) {
-            mNextItemIndexToLoadInBufferFromAdapter = index;
-        } else {
-            mNextItemIndexToLoadInBufferFromAdapter = mNextItemIndexToLoadInBufferFromAdapter - (mVisibleItemIndexInAdapter - 1 - index);
+    private void addInflatedView(int viewType, View view) {
+        if (viewType >= mViewPool.getViewTypeCount()) {
+            return;
         }
+        ViewGroup.LayoutParams layoutParams = view.getLayoutParams();
+        LayoutParams params = checkLayoutParams(layoutParams) ? (LayoutParams) layoutParams : generateLayoutParams(layoutParams);
+        params.viewType = viewType;
+        view.setLayoutParams(params);
+        mViewPool.put(viewType, view);
+    }
 
-        if (getChildCount() != 0) {
-            mViewOnDisplay = getChildAt(mVisibleItemIndexInBuffer);
-            mPreviousViewDisplayed = mVisibleItemIndexInBuffer == BUFFER_SIZE - 1? null: getChildAt(mVisibleItemIndexInBuffer + 1);
-            mNextViewToDisplay = mVisibleItemIndexInBuffer == 0 ? null : getChildAt(mVisibleItemIndexInBuffer - 1);
+    /**
+     * Inflates card views on a worker thread before the deck is created, typically from the activity that
+     * launches the deck, so that the first cards are bound without inflating them on the UI thread. The views
+     * are handed to the next card deck view that is created. They are inflated with the application context and
+     * theme, so they do not hold on to the calling activity. Up to 6 views are kept.
+     * Must be called on the UI thread.
+     * @param context
+     * @param layoutResId Layout the adapter inflates for the view type
+     * @param viewType View type as returned by {@link Adapter#getItemViewType(int)}
+     * @param count Number of views to inflate
+     */
+    public static void warmUp(Context context, final int layoutResId, final int viewType, int count) {
+        Context appContext = context.getApplicationContext();
+        final Context themedContext = new ContextThemeWrapper(appContext, appContext.getApplicationInfo().theme);
+        final int inflateCount = Math.min(count, MAX_WARM_VIEWS - sWarmViewCount);
+        if (inflateCount <= 0) {
+            return;
         }
+        getInflaterHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                LayoutInflater inflater = LayoutInflater.from(themedContext);
+                // Only gives the inflated views layout params, the views are not added to it
+                FrameLayout parent = new FrameLayout(themedContext);
+                final View[] views = new View[inflateCount];
+                for (int i = 0; i < inflateCount; i++) {
+                    views[i] = inflater.inflate(layoutResId, parent, false);
+                }
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (View view : views) {
+                            if (sWarmViewCount < MAX_WARM_VIEWS) {
+                                sWarmViews[sWarmViewCount] = view;
+                                sWarmViewTypes[sWarmViewCount] = viewType;
+                                sWarmViewCount++;
+                            }
+                        }
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Initializes the next item to load from the adapter in to the buffer and also the
-     * index of the item that will be displayed in the buffer
-     * Buffer (except the 1st item in the adapter) always stores the previous element to the element displayed on screen
-     * It also stores the next element to the element currently shown on screen (except the last element in the adapter)
+     * Drops the views inflated by {@link #warmUp(Context, int, int, int)} that no deck took
      */
-    private void initializeStartingBufferIndexes() {
-        if (mAdapterDataCount <= BUFFER_SIZE || mVisibleItemIndexInAdapter == 0) {
-            mNextItemIndexToLoadInBufferFromAdapter = 0;
-            if (mAdapterDataCount <= BUFFER_SIZE) {
-                mVisibleItemIndexInBuffer = mAdapterDataCount - 1 - mVisibleItemIndexInAdapter;
-            } else {
-                mVisibleItemIndexInBuffer = BUFFER_SIZE - 1 - mVisibleItemIndexInAdapter;
-            }
-        } else if (mVisibleItemIndexInAdapter + BUFFER_SIZE - 1 <= mAdapterDataCount) {
-            mNextItemIndexToLoadInBufferFromAdapter = mVisibleItemIndexInAdapter - 1;
-            mVisibleItemIndexInBuffer = 1;
-        } else {
-            mNextItemIndexToLoadInBufferFromAdapter = mAdapterDataCount - BUFFER_SIZE;
-            mVisibleItemIndexInBuffer = mAdapterDataCount - 1 - mVisibleItemIndexInAdapter;
+    public static void clearWarmViews() {
+        for (int i = 0; i < sWarmViewCount; i++) {
+            sWarmViews[i] = null;
         }
-        mVisibleItemIndexInBuffer = mVisibleItemIndexInBuffer < 0? 0: mVisibleItemIndexInBuffer;
+        sWarmViewCount = 0;
     }
 
     /**
-     * Move to next element. If needed, it also fetches the next element from adapter
-     * and stores in the buffer
+     * Moves the views inflated by warmUp to the view pool, for the view types it has
      */
-    private void moveToNextElement() {
-        if (mVisibleItemIndexInBuffer == 1) {
-            if (mVisibleItemIndexInAdapter + 1 < mAdapterDataCount - 1) {
-                // Remove the top most element from the screen (bottom one in the buffer)
-                // No need to move the buffer index because anyways in ensureFull method
-                // the next item is going to move to the 1st index in buffer
-                releaseView(getChildAt(BUFFER_SIZE - 1));
-                mVisibleItemIndexInAdapter++;
-                ensureFull(false);
+    private void adoptWarmViews() {
+        int kept = 0;
+        for (int i = 0; i < sWarmViewCount; i++) {
+            View view = sWarmViews[i];
+            sWarmViews[i] = null;
+            if (sWarmViewTypes[i] < mViewPool.getViewTypeCount()) {
+                addInflatedView(sWarmViewTypes[i], view);
             } else {
-                mVisibleItemIndexInBuffer--;
-                mVisibleItemIndexInAdapter++;
-                ensureFull(false);
+                // Kept for a deck whose adapter has this view type
+                sWarmViews[kept] = view;
+                sWarmViewTypes[kept] = sWarmViewTypes[i];
+                kept++;
             }
-        } else if (mVisibleItemIndexInBuffer == 0) {
-            // No more items to move to
-        } else {
-            mVisibleItemIndexInBuffer--;
-            mVisibleItemIndexInAdapter++;
-            ensureFull(false);
         }
+        sWarmViewCount = kept;
     }
 
     /**
-     * Moves to the previous element. If needed, it fetches the previous element
-     * from the adapter and adds it to the buffer
+     * Inflater without factories for the worker thread, like the one of AsyncLayoutInflater
      */
-    private void moveToPrevElement() {
-        int limit = BUFFER_SIZE;
-        if (mAdapterDataCount <= BUFFER_SIZE) {
-            limit = mAdapterDataCount;
-        }
-        if (mVisibleItemIndexInBuffer == limit - 2) {
-            if (mVisibleItemIndexInAdapter > 1) {
-                // Remove the bottom most element from the screen (top one in the buffer)
-                releaseView(getChildAt(0));
-                mVisibleItemIndexInAdapter--;
-                ensureFull(true);
-            } else {
-                mVisibleItemIndexInBuffer++;
-                mVisibleItemIndexInAdapter--;
-                ensureFull(true);
+    private static class BasicInflater extends LayoutInflater {
+        private static final String[] CLASS_PREFIXES = {"android.widget.", "android.webkit.", "android.app."};
+
+        BasicInflater(Context context) {
+            super(context);
+        }
+
+        @Override
+        public LayoutInflater cloneInContext(Context newContext) {
+            return new BasicInflater(newContext);
+        }
+
+        @Override
+        protected View onCreateView(String name, AttributeSet attrs) throws ClassNotFoundException {
+            for (String prefix : CLASS_PREFIXES) {
+                try {
+                    View view = createView(name, prefix, attrs);
+                    if (view != null) {
+                        return view;
+                    }
+                } catch (ClassNotFoundException e) {
+                    // Not a widget of this package
+                }
             }
-        } else if (mVisibleItemIndexInBuffer == limit - 1) {
-            // No more items to move to
-        } else {
-            mVisibleItemIndexInBuffer++;
-            mVisibleItemIndexInAdapter--;
-            ensureFull(true);
+            return super.onCreateView(name, attrs);
         }
     }
 
-    /**
-     * Removes a view from the list and adds it to be re-used
-     * @param view
-     */
-    private void releaseView(View view) {
-        detachViewFromParent(view);
-        addReleasedView(view);
+    private static synchronized Handler getInflaterHandler() {
+        if (sInflaterHandler == null) {
+            sInflaterThread = new HandlerThread("CardDeckInflater");
+            sInflaterThread.start();
+            sInflaterHandler = new Handler(sInflaterThread.getLooper());
+        }
+        return sInflaterHandler;
     }
 
     /**
-     * Releases all views
+     * Sets how many items are kept bound before and after the item on display. Bigger windows let fast
+     * repeated swipes run into views that are already bound at the cost of keeping more views attached.
+     * @param lookBehind Number of previous items to keep, at least 1
+     * @param lookAhead Number of next items to keep, at least 1
      */
-    private void releaseViews() {
-        for (int index = 0; index < getChildCount(); ) {
-            View view = getChildAt(index);
-            releaseView(view);
+    public void setWindowSize(int lookBehind, int lookAhead) {
+        Assert.assertTrue("lookBehind should be at least 1", lookBehind >= 1);
+        Assert.assertTrue("lookAhead should be at least 1", lookAhead >= 1);
+        mLookBehind = lookBehind;
+        mLookAhead = lookAhead;
+        isWindowTrimmed = false;
+        if (lookBehind == mWindow.getLookBehind() && lookAhead == mWindow.getLookAhead()) {
+            return;
+        }
+        releaseViews();
+        mWindow.setWindowSize(lookBehind, lookAhead);
+        mStaleViews = new View[mWindow.getCapacity()];
+        mMatchedViews = new View[mWindow.getCapacity()];
+        mMatchedChanged = new boolean[mWindow.getCapacity()];
+        if (isViewPoolShared()) {
+            mViewPool.ensureDefaultCapacity(getDefaultRecycledViewCapacity());
+        } else {
+            mViewPool.setDefaultCapacity(getDefaultRecycledViewCapacity());
         }
-        mViewOnDisplay = null;
-        mPreviousViewDisplayed = null;
-        mNextViewToDisplay = null;
-        mNextItemIndexToLoadInBufferFromAdapter = -1;
-        mVisibleItemIndexInBuffer = -1;
         if (mAdapter != null) {
-            mAdapterDataCount = mAdapter.getCount();
+            mWindow.setPosition(mWindow.getPosition());
+            ensureFull();
         }
     }
 
+    public int getLookBehind() {
+        return mWindow.getLookBehind();
+    }
+
+    public int getLookAhead() {
+        return mWindow.getLookAhead();
+    }
+
+    private int getDefaultRecycledViewCapacity() {
+        return mLookBehind + 1 + mLookAhead + mRiffleViews.length;
+    }
+
     /**
-     * Adds the released view in the released view linked list to be re-used
-     * @param view
+     * Releases memory as the system asks, in stages. From {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW} the
+     * released views and the views warmed up by {@link #warmUp(Context, int, int, int)} are dropped. Once the UI
+     * is hidden the window also shrinks to the previous and next cards, it grows back to its size on the next
+     * touch. Adapters that implement {@link ComponentCallbacks2} are given the level to release the content they
+     * cache. The deck is registered for these calls while it is attached.
+     * @param level Level given to {@link ComponentCallbacks2#onTrimMemory(int)}
      */
-    private void addReleasedView(View view) {
-        if (mReleasedViews == null) {
-            mReleasedViews = new LinkedList<>();
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN && !isDragging && !isInAnimation && !isRiffling) {
+            trimWindow();
         }
-        if (mReleasedViews.size() < MAX_RELEASED_VIEWS_SIZE) {
-            mReleasedViews.add(view);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            clearReleasedViews();
+            clearWarmViews();
+        }
+        // The dropped views left the window and let go of their content before the adapter clears its caches
+        if (mAdapter instanceof ComponentCallbacks2) {
+            ((ComponentCallbacks2) mAdapter).onTrimMemory(level);
         }
     }
 
     /**
-     * Listens to data set change events
+     * Shrinks the window to the previous and next cards, the cards on display stay bound
      */
-    private final DataSetObserver mDataSetObserver = new DataSetObserver() {
-        @Override
-        public void onChanged() {
-            super.onChanged();
-            int oldAdapterCount = mAdapterDataCount;
-            releaseViews();
-            if (oldAdapterCount <= 0 && mAdapterDataCount > 0) {
-                mVisibleItemIndexInAdapter = 0;
-                initializeStartingBufferIndexes();
-            } else if (mAdapterDataCount <= mVisibleItemIndexInAdapter) {
-                mVisibleItemIndexInAdapter = mAdapterDataCount - 1;
-                initializeStartingBufferIndexes();
-            }
-            ensureFull(false);
+    private void trimWindow() {
+        if (isWindowTrimmed || (mWindow.getLookBehind() == 1 && mWindow.getLookAhead() == 1)) {
+            return;
         }
+        isWindowTrimmed = true;
+        resizeWindow(1, 1);
+    }
 
-        @Override
-        public void onInvalidated() {
-            super.onInvalidated();
-            mVisibleItemIndexInAdapter = 0;
-            releaseViews();
+    /**
+     * Grows the window back to its size after it was trimmed, the prefetcher binds the cards it gains
+     */
+    private void restoreWindow() {
+        if (!isWindowTrimmed) {
+            return;
         }
-    };
+        isWindowTrimmed = false;
+        resizeWindow(mLookBehind, mLookAhead);
+    }
 
     /**
-     * Listens to animation events
+     * Changes the size of the window, keeping the cards that stay in it bound
      */
-    private Animator.AnimatorListener animatorListener = new Animator.AnimatorListener() {
-        @Override
-        public void onAnimationStart(Animator animation) {
-
+    private void resizeWindow(int lookBehind, int lookAhead) {
+        mWindow.setWindowSize(lookBehind, lookAhead);
+        mStaleViews = new View[mWindow.getCapacity()];
+        mMatchedViews = new View[mWindow.getCapacity()];
+        mMatchedChanged = new boolean[mWindow.getCapacity()];
+        if (mAdapter != null) {
+            ensureFull();
         }
+    }
 
+    private final ComponentCallbacks2 mComponentCallbacks = new ComponentCallbacks2() {
         @Override
-        public void onAnimationEnd(Animator animation) {
-            if (isLeftDrag && !isRightDrag) {
-                moveToNextElement();
-            } else if (!isLeftDrag && isRightDrag) {
-                moveToPrevElement();
-            }
-            isLeftDrag = isRightDrag = false;
-            isInAnimation = false;
+        public void onTrimMemory(int level) {
+            trimMemory(level);
         }
 
         @Override
-        public void onAnimationCancel(Animator animation) {
-
+        public void onLowMemory() {
+            trimMemory(TRIM_MEMORY_COMPLETE);
         }
 
         @Override
-        public void onAnimationRepeat(Animator animation) {
-
+        public void onConfigurationChanged(Configuration newConfig) {
         }
     };
 
     /**
-     * Listens to swipe/fling events
+     * Makes the deck re-use the views released by the other decks using the same pool, and release its views to it.
+     * The adapters of those decks must return the same views for the same view types. The views the deck released
+     * to its previous pool stay there.
+     * @param pool
      */
-    private class GestureListener extends GestureDetector.SimpleOnGestureListener {
-
-        @Override
-        public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
-            // e1 is down event
-            // e2 is up event
-            float initX = e1.getX();
-            float finalX = e2.getX();
-            float deltaX = initX - finalX;
-            // if deltaX > 0 - left swipe
-            if (deltaX > 0 && mNextViewToDisplay != null) {
-                // Left swipe
-                isLeftDrag = true;
-                isRightDrag = false;
-                animateLeftDrag(mViewOnDisplay, mNextViewToDisplay, -getWidth());
-                return true;
-            } else if (deltaX < 0 && mPreviousViewDisplayed != null) {
-                // Right drag
-                isLeftDrag = false;
-                isRightDrag = true;
-                animateRightDrag(mViewOnDisplay, mPreviousViewDisplayed, 0);
-                return true;
-            } else {
-                isLeftDrag = false;
-                isRightDrag = false;
-                return false;
-            }
+    public void setRecycledViewPool(CardDeckViewPool pool) {
+        Assert.assertNotNull("pool should not be null", pool);
+        if (pool == mViewPool) {
+            return;
+        }
+        releaseViews();
+        if (isViewPoolShared()) {
+            removeReleasedViews();
+        } else {
+            // No other deck can use them
+            clearReleasedViews();
+        }
+        if (isAttached) {
+            mViewPool.removeDeck();
+            pool.addDeck();
+        }
+        mViewPool = pool;
+        mViewPool.ensureDefaultCapacity(getDefaultRecycledViewCapacity());
+        if (mAdapter != null) {
+            mViewPool.setViewTypeCount(mAdapter.getViewTypeCount());
+            mWindow.setPosition(mWindow.getPosition());
+            ensureFull();
         }
     }
-}
 
-// TODO: Add fling slop and touch slop
\ No newline at end of file
+    /**
+     * Tells if other decks in a window use the view pool. Detached decks do not count, they do not re-use views
+     * until they are attached again.
+     */
+    private boolean isViewPoolShared() {
+        return mViewPool.getDeckCount() > (isAttached ? 1 : 0);
+    }
+
+    public CardDeckViewPool getRecycledViewPool() {
+        return mViewPool;
+    }
+
+    /**
+     * Sets how many released views of the given adapter view type are kept to be re-used. The capacities
+     * belong to the current adapter, so this has to be called after {@link #setAdapter(Adapter)}. With a shared
+     * pool the capacity applies to all the decks using it.
+     * @param viewType View type as returned by {@link Adapter#getItemViewType(int)}
+     * @param capacity
+     */
+    public void setRecycledViewCapacity(int viewType, int capacity) {
+        Assert.assertTrue("viewType should be a view type of the adapter", viewType >= 0 && viewType < mViewPool.getViewTypeCount());
+        mViewPool.setCapacity(viewType, capacity);
+    }
+
+    /**
+     * Returns the number of times a released view of the right type was handed to the adapter. With a shared pool
+     * it counts the views handed to all the decks using it.
+     */
+    public int getRecycleHitCount() {
+        return mViewPool.getHitCount();
+    }
+
+    /**
+     * Returns the number of times the adapter had to create a new view because there was no released view of the
+     * right type or it did not use the one it was given
+     */
+    public int getRecycleMissCount() {
+        return mViewPool.getMissCount();
+    }
+
+    public void resetRecycleCounters() {
+        mViewPool.resetCounters();
+    }
+
+    /**
+     * Starts or stops counting the binds, inflations and recycling done by the deck. Counting is off by default
+     * and costs nothing while it is off. The same work shows up as trace sections named CardDeck.* in systrace.
+     * @param enabled
+     */
+    public void setStatsEnabled(boolean enabled) {
+        if (enabled && mStats == null) {
+            mStats = new CardDeckStats();
+        } else if (!enabled) {
+            mStats = null;
+        }
+    }
+
+    public boolean isStatsEnabled() {
+        return mStats != null;
+    }
+
+    /**
+     * Returns the counters collected since they were enabled or reset, or null if they are not enabled. The
+     * recycle counters are brought up to date on every call.
+     */
+    public CardDeckStats getStats() {
+        if (mStats != null) {
+            mStats.mRecycleHitCount = mViewPool.getHitCount();
+            mStats.mRecycleMissCount = mViewPool.getMissCount();
+        }
+        return mStats;
+    }
+
+    /**
+     * Resets the counters returned by {@link #getStats()} and the recycle counters
+     */
+    public void resetStats() {
+        if (mStats != null) {
+            mStats.reset();
+        }
+        mViewPool.resetCounters();
+    }
+
+    @Override
+    public Adapter getAdapter() {
+        return mAdapter;
+    }
+
+    @Override
+    public void setAdapter(Adapter adapter) {
+        setAdapter(adapter, 0);
+    }
+
+    @Override
+    public View getSelectedView() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the position of the card on display, or {@link #INVALID_POSITION} if there is no card
+     */
+    @Override
+    public int getSelectedItemPosition() {
+        if (mAdapter == null || mWindow.getCount() <= 0) {
+            return INVALID_POSITION;
+        }
+        return mWindow.getPosition();
+    }
+
+    /**
+     * Moves to the given position without animation. Before the view is attached to a window the position is only
+     * recorded, the cards are bound once the view is attached, so that a restored position does not bind the
+     * cards at the initial position first.
+     * @param position
+     */
+    @Override
+    public void setSelection(int position) {
+        if (mAdapter == null) {
+            return;
+        }
+        if (!isAttached) {
+            mPendingPosition = position;
+            mPendingItemId = INVALID_ROW_ID;
+            return;
+        }
+        mPendingPosition = INVALID_POSITION;
+        mPendingItemId = INVALID_ROW_ID;
+
+        releaseViews();
+
+        // Positions out of the adapter go to the 1st item
+        mWindow.setPosition(position);
+
+        ensureFull();
+    }
+
+    /**
+     * Sets how many cards the fastest fling moves. Flings faster than a quarter of the maximum fling velocity move
+     * more than one card, growing with the square of the speed up to this count. The cards passed over are not
+     * bound, the fling riffles through a few of them like {@link #smoothScrollToPosition(int)}.
+     * @param count Number of cards, 1 to always move one card per fling
+     */
+    public void setMaxFlingCardCount(int count) {
+        mMaxFlingCardCount = Math.max(1, count);
+    }
+
+    public int getMaxFlingCardCount() {
+        return mMaxFlingCardCount;
+    }
+
+    /**
+     * Moves to the given position with an animation. The next or previous card is swiped in, a card further
+     * away is reached with a quick riffle through a few cards sampled in between. Only the target card, its
+     * neighbours and the sampled cards are bound, so the transition costs the same whatever the distance.
+     * @param position
+     */
+    public void smoothScrollToPosition(int position) {
+        if (mAdapter == null || position < 0 || position >= mWindow.getCount()) {
+            return;
+        }
+        if (isRiffling) {
+            endRiffle();
+        }
+        // The swipe in progress is completed first, the riffle starts from where it leads
+        mCardAnimator.end();
+        int currentPosition = mWindow.getPosition();
+        if (position == currentPosition) {
+            return;
+        }
+        if (mViewOnDisplay == null || getWidth() == 0) {
+            setSelection(position);
+            return;
+        }
+        if (Math.abs(position - currentPosition) == 1) {
+            ensureNeighbours();
+            startSwipe(true);
+            if (position > currentPosition) {
+                isLeftDrag = true;
+                animateLeftDrag(mViewOnDisplay, mNextViewToDisplay, -getWidth(), 0);
+            } else {
+                isRightDrag = true;
+                animateRightDrag(mViewOnDisplay, mPreviousViewDisplayed, 0, 0);
+            }
+            return;
+        }
+        startRiffle(position);
+    }
+
+    /**
+     * Sets up the cards of a riffle to the given position and starts its 1st step. Going forward the card on display
+     * and the sampled cards are stacked on the target card and flicked away one after the other. Going backward
+     * the sampled cards and the target card are stacked offscreen and slid in one after the other.
+     * @param targetPosition
+     */
+    private void startRiffle(int targetPosition) {
+        int currentPosition = mWindow.getPosition();
+        isRiffleForward = targetPosition > currentPosition;
+        releaseCardLayers();
+
+        // The card on display and its neighbour towards the target, which the touch may have dragged already, are
+        // the first cards of the riffle. The rest of the window is released.
+        View currentView = mViewOnDisplay;
+        View neighbourView = isRiffleForward ? mNextViewToDisplay : mPreviousViewDisplayed;
+        int count = mWindow.drainTo(mStaleViews);
+        for (int i = 0; i < count; i++) {
+            if (mStaleViews[i] == currentView || mStaleViews[i] == neighbourView) {
+                detachViewFromParent(mStaleViews[i]);
+            } else {
+                releaseView(mStaleViews[i]);
+            }
+            mStaleViews[i] = null;
+        }
+
+        mWindow.setPosition(targetPosition);
+        ensureFull();
+        View targetView = mViewOnDisplay;
+
+        mRiffleViews[0] = currentView;
+        mRiffleViewCount = 1;
+        int sampleFromPosition = currentPosition;
+        if (neighbourView != null) {
+            mRiffleViews[mRiffleViewCount++] = neighbourView;
+            sampleFromPosition += isRiffleForward ? 1 : -1;
+        }
+        int sampleCount = Math.min(RIFFLE_CARD_COUNT - (mRiffleViewCount - 1),
+                Math.abs(targetPosition - sampleFromPosition) - 1);
+        for (int i = 1; i <= sampleCount; i++) {
+            View view = bindView(getRifflePosition(sampleFromPosition, targetPosition, i, sampleCount), null);
+            // Going forward the cards are revealed and zoom in like the next card, going backward they slide in
+            view.setX(isRiffleForward ? 0 : -getWidth());
+            float scale = isRiffleForward ? ZOOM_OUT_SCALE_FACTOR : ZOOM_IN_SCALE_FACTOR;
+            view.setScaleX(scale);
+            view.setScaleY(scale);
+            mRiffleViews[mRiffleViewCount++] = view;
+        }
+
+        if (isRiffleForward) {
+            // The cards closer to the card on display are stacked above the ones closer to the target
+            for (int i = mRiffleViewCount - 1; i >= 0; i--) {
+                attachCard(mRiffleViews[i], -1);
+            }
+            targetView.setScaleX(ZOOM_OUT_SCALE_FACTOR);
+            targetView.setScaleY(ZOOM_OUT_SCALE_FACTOR);
+        } else {
+            for (int i = 0; i < mRiffleViewCount; i++) {
+                attachCard(mRiffleViews[i], indexOfChild(targetView));
+            }
+            targetView.setX(-getWidth());
+        }
+
+        isRiffling = true;
+        mRiffleStep = 0;
+        startSwipe(true);
+        mCardAnimator.setSpringFrequency(RIFFLE_SPRING_FREQUENCY);
+        startRiffleStep();
+    }
+
+    /**
+     * Returns the position of the i-th of the cards sampled evenly between the two positions
+     */
+    private static int getRifflePosition(int fromPosition, int toPosition, int i, int sampleCount) {
+        return fromPosition + (int) ((long) (toPosition - fromPosition) * i / (sampleCount + 1));
+    }
+
+    private void startRiffleStep() {
+        isInAnimation = true;
+        boolean isLastStep = mRiffleStep == mRiffleViewCount - 1;
+        if (isRiffleForward) {
+            // The card flicked away reveals the card below it, which zooms in
+            View revealedView = isLastStep ? mViewOnDisplay : mRiffleViews[mRiffleStep + 1];
+            mCardAnimator.add(mRiffleViews[mRiffleStep], CardDeckAnimator.X, -getWidth())
+                    .add(revealedView, CardDeckAnimator.SCALE, ZOOM_IN_SCALE_FACTOR);
+        } else {
+            View card = isLastStep ? mViewOnDisplay : mRiffleViews[mRiffleStep + 1];
+            mCardAnimator.add(card, CardDeckAnimator.X, 0);
+        }
+        mCardAnimator.start(RIFFLE_VELOCITY);
+        invalidate();
+    }
+
+    /**
+     * Stops the riffle in progress and shows the target card right away
+     */
+    private void endRiffle() {
+        isRiffling = false;
+        mCardAnimator.cancel();
+        finishRiffle();
+    }
+
+    /**
+     * Releases the cards that were only kept for the riffle
+     */
+    private void finishRiffle() {
+        isRiffling = false;
+        isInAnimation = false;
+        isLeftDrag = isRightDrag = false;
+        mCardAnimator.setSpringFrequency(CardDeckAnimator.DEFAULT_SPRING_FREQUENCY);
+        if (mViewOnDisplay != null) {
+            placeView(mViewOnDisplay, mWindow.getPosition());
+        }
+        for (int i = 0; i < mRiffleViewCount; i++) {
+            releaseView(mRiffleViews[i]);
+            mRiffleViews[i] = null;
+        }
+        mRiffleViewCount = 0;
+        finishSwipe();
+    }
+
+    @Override
+    public void requestLayout() {
+        if (!mBlockLayoutRequests) {
+            super.requestLayout();
+        }
+    }
+
+    /**
+     * Cards behind the card on display are parked one deck width to the left, so they are placed again when the
+     * width changes, or when they were bound before the first layout
+     */
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (isDragging || isInAnimation || mWindow.isEmpty()) {
+            return;
+        }
+        int firstPosition = mWindow.getFirstBoundPosition();
+        for (int i = 0; i < mWindow.size(); i++) {
+            placeView(mWindow.getAt(i), firstPosition + i);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+
+        int width = right - left;
+        int height = bottom - top;
+        for (int i = 0; i < getChildCount(); i++) {
+            View view = getChildAt(i);
+            // Every card covers the whole deck, cards that are already there and did not ask for a layout are skipped
+            if (changed || view.isLayoutRequested() || view.getLeft() != 0 || view.getTop() != 0
+                    || view.getRight() != width || view.getBottom() != height) {
+                view.layout(0, 0, width, height);
+            }
+        }
+        if (changed && mAdapter != null) {
+            notifyPrefetchWindow();
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+
+        boolean specsChanged = !hasMeasureSpecs || widthMeasureSpec != mWidthMeasureSpec || heightMeasureSpec != mHeightMeasureSpec;
+        mWidthMeasureSpec = widthMeasureSpec;
+        mHeightMeasureSpec = heightMeasureSpec;
+        hasMeasureSpecs = true;
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            assert child != null;
+            // Measurements of cards that did not change are still valid for the same specs
+            if (specsChanged || child.isLayoutRequested()) {
+                child.measure(widthMeasureSpec, heightMeasureSpec);
+            }
+        }
+    }
+
+    /**
+     * Measures and lays out a card that was just attached (or re-bound) directly, the same way onMeasure and
+     * onLayout would, so that changing the cards of the buffer does not need a layout pass of the whole deck.
+     * Before the deck has been laid out once, a regular layout pass is requested instead.
+     * @param child
+     */
+    private void setupChild(View child) {
+        if (!hasMeasureSpecs || isLayoutRequested()) {
+            super.requestLayout();
+            return;
+        }
+        if (child.isLayoutRequested() || child.getMeasuredWidth() == 0) {
+            child.measure(mWidthMeasureSpec, mHeightMeasureSpec);
+        }
+        child.layout(0, 0, getWidth(), getHeight());
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        return handleTouchEvent(ev, false);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        return handleTouchEvent(event, true);
+    }
+
+    private boolean handleTouchEvent(MotionEvent event, boolean isOnTouchEvent) {
+        int action = event.getActionMasked();
+        if (event.getEventTime() == mLastEventTime && action == mLastEventAction) {
+            // Already handled by onInterceptTouchEvent, onTouchEvent takes the rest of the gesture
+            return isOnTouchEvent;
+        }
+        mLastEventTime = event.getEventTime();
+        mLastEventAction = action;
+
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        if (action == MotionEvent.ACTION_DOWN) {
+            mVelocityTracker.clear();
+        }
+        // Also takes the historical samples batched in the event
+        mVelocityTracker.addMovement(event);
+        switch (action) {
+
+            case MotionEvent.ACTION_DOWN:
+                cancelPendingDrag();
+                if (isRiffling) {
+                    // A riffle is not caught like a swipe, the touch starts from the target card
+                    endRiffle();
+                }
+                if (isInAnimation) {
+                    catchAnimation(event.getX());
+                    return true;
+                }
+                restoreWindow();
+                ensureNeighbours();
+                mDownEventX = event.getX();
+                mLastX = -1;
+                isDragging = false;
+                return isOnTouchEvent;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (isInAnimation) {
+                    return isOnTouchEvent;
+                }
+                // The cards are settled from the last touch position
+                flushPendingDrag();
+                mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+                float velocityX = action == MotionEvent.ACTION_UP ? mVelocityTracker.getXVelocity() : 0;
+                mVelocityTracker.recycle();
+                mVelocityTracker = null;
+                if (mSwipeFrameRecorder != null) {
+                    mSwipeFrameRecorder.release();
+                }
+                settle(velocityX);
+                isDragging = false;
+                if (!isInAnimation) {
+                    releaseCardLayers();
+                    finishSwipe();
+                }
+                return isOnTouchEvent;
+            case MotionEvent.ACTION_MOVE:
+                if (isInAnimation) {
+                    return isOnTouchEvent;
+                }
+                if (!isDragging && !crossTouchSlop(event)) {
+                    return false;
+                }
+                // Input can come faster than the display refreshes, only the latest position of the frame is applied
+                mPendingDragX = event.getX();
+                if (!hasPendingDrag) {
+                    hasPendingDrag = true;
+                    Choreographer.getInstance().postFrameCallback(mDragFrameCallback);
+                }
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Looks for the first sample of the event, historical samples included, that moved past the touch slop and
+     * starts the drag from there
+     * @param event
+     * @return true if the drag started
+     */
+    private boolean crossTouchSlop(MotionEvent event) {
+        int historySize = event.getHistorySize();
+        for (int i = 0; i <= historySize; i++) {
+            float x = i < historySize ? event.getHistoricalX(i) : event.getX();
+            float slopDeltaX = mDownEventX - x;
+            if (Math.abs(slopDeltaX) > mTouchSlop) {
+                // Start following the touch from where it crossed the slop so the cards do not jump
+                mDownEventX += slopDeltaX > 0 ? -mTouchSlop : mTouchSlop;
+                isDragging = true;
+                startSwipe(false);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the cards to the touch position once per frame, after the input of the frame was handled
+     */
+    private final Choreographer.FrameCallback mDragFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (hasPendingDrag) {
+                hasPendingDrag = false;
+                applyDrag(mPendingDragX);
+            }
+        }
+    };
+
+    /**
+     * Applies the pending touch position right away, e.g. before the cards are settled
+     */
+    private void flushPendingDrag() {
+        if (hasPendingDrag) {
+            Choreographer.getInstance().removeFrameCallback(mDragFrameCallback);
+            hasPendingDrag = false;
+            applyDrag(mPendingDragX);
+        }
+    }
+
+    private void cancelPendingDrag() {
+        if (hasPendingDrag) {
+            Choreographer.getInstance().removeFrameCallback(mDragFrameCallback);
+            hasPendingDrag = false;
+        }
+    }
+
+    /**
+     * Moves the cards so that they follow the touch at the given position
+     * @param newX
+     */
+    private void applyDrag(float newX) {
+        if (mViewOnDisplay == null || !isDragging || isInAnimation) {
+            return;
+        }
+        promoteCardLayers();
+        int deltaX = (int) (mDownEventX - newX);
+        float ratio = (float) deltaX / getWidth();
+        if (deltaX > 0) {
+            // Left drag
+            // There is a possibility that this event is a continuation event to a right drag folowed by left drag in one motion itself
+            // where the user has dragged past the point where he started motion (down event)
+            // In that case we need to reset the previous and current screen because they were displaced because of right drag movement
+            if (isRightDrag) {
+                mViewOnDisplay.setX(0);
+                mViewOnDisplay.setScaleX(ZOOM_IN_SCALE_FACTOR);
+                mViewOnDisplay.setScaleY(ZOOM_IN_SCALE_FACTOR);
+                mPreviousViewDisplayed.setX(-getWidth());
+            }
+            isLeftDrag = true;
+            isRightDrag = false;
+            if (mNextViewToDisplay != null) {
+                mViewOnDisplay.setX(-deltaX);
+                float scalingFactor = (float) (ZOOM_OUT_SCALE_FACTOR + ((ZOOM_IN_SCALE_FACTOR - ZOOM_OUT_SCALE_FACTOR) * ratio));
+                mNextViewToDisplay.setScaleX(scalingFactor);
+                mNextViewToDisplay.setScaleY(scalingFactor);
+            } else {
+                isLeftDrag = false;
+                ratio = (float) deltaX / (10 * getWidth());
+                float scalingFactor = (ZOOM_IN_SCALE_FACTOR + ratio);
+                mViewOnDisplay.setScaleX(scalingFactor);
+                mViewOnDisplay.setScaleY(scalingFactor);
+            }
+        } else {
+            // Right drag
+            // There is a possibility where user first moves left and then moves right and moves right past the point where
+            // he started left movement. In that case we need to bring current view back to normal nd next view also to normal
+            // because otherwise because of left movement before this, they were displaced.
+            if (isLeftDrag) {
+                // First left movement was done and then in same movement right was done past the initial touch of down event
+                // that is why delta is < 0
+                mViewOnDisplay.setX(0);
+                mNextViewToDisplay.setScaleX(ZOOM_OUT_SCALE_FACTOR);
+                mNextViewToDisplay.setScaleY(ZOOM_OUT_SCALE_FACTOR);
+            }
+            isLeftDrag = false;
+            isRightDrag = true;
+            if (mPreviousViewDisplayed != null) {
+                mPreviousViewDisplayed.setX(-getWidth() - deltaX);
+                float scalingFactor = (float) (ZOOM_IN_SCALE_FACTOR - ((ZOOM_IN_SCALE_FACTOR - ZOOM_OUT_SCALE_FACTOR) * Math.abs(ratio)));
+                mViewOnDisplay.setScaleX(scalingFactor);
+                mViewOnDisplay.setScaleY(scalingFactor);
+            } else {
+                isRightDrag = false;
+                ratio = (float) Math.abs(deltaX) / (10 * getWidth());
+                float scalingFactor = (float) (ZOOM_IN_SCALE_FACTOR + ratio);
+                mViewOnDisplay.setScaleX(scalingFactor);
+                mViewOnDisplay.setScaleY(scalingFactor);
+            }
+        }
+        mLastX = newX;
+        // Moving a card does not re-record the drawing of the deck on hardware accelerated windows,
+        // the cards to cull depend on where the cards are so the deck is redrawn
+        invalidate();
+        if (mOnCardDragListener != null) {
+            mOnCardDragListener.onCardDrag(-deltaX);
+        }
+    }
+
+    /**
+     * Stops the swipe animation in progress where it is and lets the touch that started at the given x coordinate
+     * drag the cards on from there, as if the touch had been dragging them all along
+     * @param x
+     */
+    private void catchAnimation(float x) {
+        // The swipe being recorded goes on with the new touch
+        mCardAnimator.cancel();
+        isInAnimation = false;
+        // During an animation the card on display has not changed yet, so the cards' positions tell how far
+        // the equivalent drag went
+        float deltaX = 0;
+        if (mViewOnDisplay != null && mViewOnDisplay.getX() < 0) {
+            deltaX = -mViewOnDisplay.getX();
+        } else if (mPreviousViewDisplayed != null && mPreviousViewDisplayed.getX() > -getWidth()) {
+            deltaX = -getWidth() - mPreviousViewDisplayed.getX();
+        } else if (mViewOnDisplay != null) {
+            // Restoring from an over-pull, the over-pull starts again from no displacement
+            mViewOnDisplay.setScaleX(ZOOM_IN_SCALE_FACTOR);
+            mViewOnDisplay.setScaleY(ZOOM_IN_SCALE_FACTOR);
+        }
+        isLeftDrag = deltaX > 0;
+        isRightDrag = deltaX < 0;
+        mDownEventX = x + deltaX;
+        mLastX = x;
+        isDragging = true;
+    }
+
+    /**
+     * Settles the cards once the touch is released. A release faster than the minimum fling velocity completes
+     * the swipe in its direction or cancels it when it goes against it, a slower release completes the swipe if
+     * the card went at least half way. The animation starts with the release velocity.
+     * @param velocityX Release velocity in pixels per second
+     */
+    private void settle(float velocityX) {
+        int width = getWidth();
+        if (mViewOnDisplay == null || width == 0) {
+            return;
+        }
+        boolean isFling = Math.abs(velocityX) >= mFlingSlop;
+        if (isLeftDrag && !isRightDrag) {
+            float distance = -mViewOnDisplay.getX();
+            if (isFling ? velocityX < 0 : distance >= width / 2) {
+                if (!isFling || !flingCards(1, -velocityX)) {
+                    animateLeftDrag(mViewOnDisplay, mNextViewToDisplay, -width, toFractionVelocity(-velocityX, width - distance));
+                }
+            } else {
+                isLeftDrag = false;
+                animateRightDrag(mNextViewToDisplay, mViewOnDisplay, 0, toFractionVelocity(velocityX, distance));
+            }
+        } else if (!isLeftDrag && isRightDrag) {
+            float distance = mPreviousViewDisplayed.getX() + width;
+            if (isFling ? velocityX > 0 : distance >= width / 2) {
+                if (!isFling || !flingCards(-1, velocityX)) {
+                    animateRightDrag(mViewOnDisplay, mPreviousViewDisplayed, 0, toFractionVelocity(velocityX, width - distance));
+                }
+            } else {
+                isRightDrag = false;
+                animateLeftDrag(mPreviousViewDisplayed, mViewOnDisplay, -width, toFractionVelocity(-velocityX, distance));
+            }
+        } else if (isFling && !isDragging && velocityX < 0 && mNextViewToDisplay != null) {
+            // A quick flick that did not get past the touch slop
+            startSwipe(true);
+            isLeftDrag = true;
+            if (!flingCards(1, -velocityX)) {
+                animateLeftDrag(mViewOnDisplay, mNextViewToDisplay, -width, toFractionVelocity(-velocityX, width));
+            }
+        } else if (isFling && !isDragging && velocityX > 0 && mPreviousViewDisplayed != null) {
+            startSwipe(true);
+            isRightDrag = true;
+            if (!flingCards(-1, velocityX)) {
+                animateRightDrag(mViewOnDisplay, mPreviousViewDisplayed, 0, toFractionVelocity(velocityX, width));
+            }
+        } else if (mViewOnDisplay.getX() != 0 || mViewOnDisplay.getScaleX() != ZOOM_IN_SCALE_FACTOR) {
+            animateRestore(mViewOnDisplay);
+        }
+    }
+
+    /**
+     * Moves several cards at once if the fling is fast enough, with a riffle to the card it lands on
+     * @param direction 1 to move forward, -1 to move backward
+     * @param speed Fling velocity in pixels per second
+     * @return false if the fling only moves one card, which is left to the caller
+     */
+    private boolean flingCards(int direction, float speed) {
+        int currentPosition = mWindow.getPosition();
+        int targetPosition = currentPosition + direction * getFlingCardCount(speed);
+        targetPosition = Math.max(0, Math.min(mWindow.getCount() - 1, targetPosition));
+        if (Math.abs(targetPosition - currentPosition) < 2) {
+            return false;
+        }
+        startRiffle(targetPosition);
+        return true;
+    }
+
+    private int getFlingCardCount(float speed) {
+        if (mMaxFlingCardCount <= 1 || speed < mMultiFlingVelocity) {
+            return 1;
+        }
+        float fraction = Math.min(1f, (speed - mMultiFlingVelocity) / (mMaxFlingVelocity - mMultiFlingVelocity));
+        return 2 + (int) (fraction * fraction * (mMaxFlingCardCount - 2));
+    }
+
+    /**
+     * Starts timing a swipe if a metrics listener is attached, and counting its binds if stats are enabled
+     * @param isReleased Indicates the swipe starts with the touch already released (a quick flick)
+     */
+    private void startSwipe(boolean isReleased) {
+        if (mSwipeFrameRecorder != null) {
+            mSwipeFrameRecorder.start();
+            if (isReleased) {
+                mSwipeFrameRecorder.release();
+            }
+        }
+        if (mStats != null) {
+            mStats.onSwipeStart();
+        }
+    }
+
+    /**
+     * Ends the swipe started with {@link #startSwipe(boolean)} once the cards are at rest
+     */
+    private void finishSwipe() {
+        // The stats are up to date when the metrics listener is called, except for the cards prefetched afterwards
+        if (mStats != null) {
+            mStats.onSwipeEnd(isPrefetchEnabled && mWindow.hasPending());
+        }
+        if (mSwipeFrameRecorder != null) {
+            mSwipeFrameRecorder.finish();
+        }
+    }
+
+    /**
+     * Converts a velocity towards the target in pixels per second to the fraction of the remaining distance
+     * covered per second
+     * @param velocity
+     * @param distance Remaining distance in pixels
+     */
+    private static float toFractionVelocity(float velocity, float distance) {
+        if (velocity <= 0 || distance <= 0) {
+            return 0;
+        }
+        return velocity / distance;
+    }
+
+    /**
+     * Animates the restore of the view to its original dimensions after we pull 1st and last item in the list because
+     * as we pull 1st and last item it zooms in.
+     * @param currentView
+     */
+    private void animateRestore(View currentView) {
+        if (isInAnimation) {
+            return;
+        }
+        isInAnimation = true;
+        promoteCardLayers();
+        mCardAnimator.add(currentView, CardDeckAnimator.SCALE, ZOOM_IN_SCALE_FACTOR)
+                .add(currentView, CardDeckAnimator.X, 0)
+                .start(0);
+        // Animated cards are not culled, the deck is redrawn so that all of them are drawn
+        invalidate();
+    }
+
+    /**
+     * Animates the left drag movement to display next element in the list
+     * This method is called for items with index 0 to number of elements - 2
+     * @param currentView
+     * @param nextView
+     * @param finalX
+     * @param velocity Initial velocity as the fraction of the distance to cover per second
+     */
+    private void animateLeftDrag(View currentView, View nextView, float finalX, float velocity) {
+        if (isInAnimation) {
+            return;
+        }
+        isInAnimation = true;
+        promoteCardLayers();
+        mCardAnimator.add(currentView, CardDeckAnimator.X, finalX)
+                .add(nextView, CardDeckAnimator.SCALE, ZOOM_IN_SCALE_FACTOR)
+                .add(nextView, CardDeckAnimator.X, 0)
+                .start(velocity);
+        // Animated cards are not culled, the deck is redrawn so that all of them are drawn
+        invalidate();
+    }
+
+    /**
+     * Animates right drag to display the previous element. This method is called for
+     * items with index = 1 to total number of elements in adapter - 1
+     * @param currentView
+     * @param prevView
+     * @param finalX
+     * @param velocity Initial velocity as the fraction of the distance to cover per second
+     */
+    private void animateRightDrag(View currentView, View prevView, float finalX, float velocity) {
+        if (isInAnimation) {
+            return;
+        }
+        isInAnimation = true;
+        promoteCardLayers();
+        mCardAnimator.add(prevView, CardDeckAnimator.X, finalX)
+                .add(currentView, CardDeckAnimator.SCALE, ZOOM_OUT_SCALE_FACTOR)
+                .start(velocity);
+        // Animated cards are not culled, the deck is redrawn so that all of them are drawn
+        invalidate();
+    }
+
+    public void setAdapter(Adapter adapter, int initialPosition) {
+        if (this.mAdapter != null) {
+            this.mAdapter.unregisterDataSetObserver(mDataSetObserver);
+            if (this.mAdapter instanceof CardDeckDiff.Observable) {
+                ((CardDeckDiff.Observable) this.mAdapter).unregisterDiffObserver(mDiffObserver);
+            }
+        }
+
+        Assert.assertNotNull("adapter should not be null", adapter);
+
+        if (this.mAdapter != adapter) {
+            releaseViews();
+            if (this.mAdapter != null && !isViewPoolShared()) {
+                // View types belong to the adapter, so released views of the old adapter can not be re-used. Decks
+                // sharing a pool use the same view types, their views are kept.
+                clearReleasedViews();
+            }
+            mViewPool.setViewTypeCount(adapter.getViewTypeCount());
+            adoptWarmViews();
+        }
+        this.mAdapter = adapter;
+        mWindow.setCount(adapter.getCount());
+
+        this.mAdapter.registerDataSetObserver(mDataSetObserver);
+        if (this.mAdapter instanceof CardDeckDiff.Observable) {
+            ((CardDeckDiff.Observable) this.mAdapter).registerDiffObserver(mDiffObserver);
+        }
+        isDiffApplied = false;
+        mPrefetchWindowStart = INVALID_POSITION;
+        mPrefetchWindowEnd = INVALID_POSITION;
+
+        setSelection(initialPosition);
+    }
+
+    /**
+     * This method keeps the buffer filled with the items in the window around the item on display, unless the
+     * adapter has fewer items than the window. The window itself releases the items that moved out of it and
+     * binds the item on display whenever the position changes. When prefetching is enabled the rest of the
+     * window is bound by the prefetcher in idle time, otherwise it is bound right away.
+     */
+    private void ensureFull() {
+        if (mAdapter == null || mWindow.getCount() <= 0) {
+            updateDisplayedViews();
+            return;
+        }
+        Trace.beginSection("CardDeck.ensureFull");
+        try {
+            notifyPrefetchWindow();
+            if (isPrefetchEnabled) {
+                updateDisplayedViews();
+                if (mWindow.hasPending()) {
+                    mPrefetcher.schedule();
+                }
+            } else {
+                mWindow.fill();
+                updateDisplayedViews();
+            }
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Tells a {@link PrefetchAdapter} about the window if it or the size of the cards changed since it was last told
+     */
+    private void notifyPrefetchWindow() {
+        if (!(mAdapter instanceof PrefetchAdapter) || mWindow.getCount() <= 0) {
+            return;
+        }
+        int windowStart = mWindow.getWindowStart();
+        int windowEnd = mWindow.getWindowEnd();
+        int width = getWidth();
+        if (windowStart == mPrefetchWindowStart && windowEnd == mPrefetchWindowEnd && width == mPrefetchCardWidth) {
+            return;
+        }
+        mPrefetchWindowStart = windowStart;
+        mPrefetchWindowEnd = windowEnd;
+        mPrefetchCardWidth = width;
+        ((PrefetchAdapter) mAdapter).onPrefetchWindow(windowStart, windowEnd, width, getHeight());
+    }
+
+    /**
+     * Makes sure the previous and next items are bound before a gesture starts, in case the prefetcher did not
+     * get to them yet
+     */
+    private void ensureNeighbours() {
+        if (mAdapter == null || mWindow.isEmpty()) {
+            return;
+        }
+        mWindow.fill(1, 1);
+        updateDisplayedViews();
+    }
+
+    /**
+     * Binds and releases the views of the window
+     */
+    private final CardDeckWindow.Binder<View> mWindowBinder = new CardDeckWindow.Binder<View>() {
+        @Override
+        public View bind(int position, boolean atTop) {
+            return obtainView(position, atTop);
+        }
+
+        @Override
+        public void release(View view) {
+            releaseView(view);
+        }
+    };
+
+    /**
+     * Prefetches the items of the window, the ones closest to the item on display first
+     */
+    private final CardDeckPrefetcher.Callback mPrefetchCallback = new CardDeckPrefetcher.Callback() {
+        @Override
+        public boolean hasPendingCard() {
+            return mAdapter != null && mWindow.hasPending();
+        }
+
+        @Override
+        public void prefetchCard() {
+            isPrefetchingCard = true;
+            try {
+                mWindow.bindNextPending();
+            } finally {
+                isPrefetchingCard = false;
+            }
+            updateDisplayedViews();
+            if (mStats != null && !mWindow.hasPending()) {
+                mStats.onPrefetchDone();
+            }
+        }
+    };
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+        if (mTimeToFirstCardNanos < 0 && mViewOnDisplay != null) {
+            mTimeToFirstCardNanos = System.nanoTime() - mFirstCardStartNanos;
+            if (mOnFirstCardDrawnListener != null) {
+                mOnFirstCardDrawnListener.onFirstCardDrawn(mTimeToFirstCardNanos);
+            }
+        }
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if (isCulled(child)) {
+            mCulledDrawCount++;
+            if (mSwipeFrameRecorder != null) {
+                mSwipeFrameRecorder.onCulledDraw();
+            }
+            return false;
+        }
+        return super.drawChild(canvas, child, drawingTime);
+    }
+
+    /**
+     * Tells if the card does not contribute any pixel, because it is outside of the deck or entirely covered by
+     * an opaque card drawn above it, see {@link #isOpaqueCard(View)}. Cards only move, and the deck is redrawn
+     * whenever they do, except for the cards being animated which are never culled.
+     * @param child
+     */
+    private boolean isCulled(View child) {
+        if (!isOverdrawCullingEnabled || (isInAnimation && mCardAnimator.isAnimating(child))) {
+            return false;
+        }
+        getTransformedBounds(child, mChildBounds);
+        if (!mChildBounds.intersect(0, 0, getWidth(), getHeight())) {
+            return true;
+        }
+        // Children after this one are drawn above it
+        int childCount = getChildCount();
+        for (int i = indexOfChild(child) + 1; i < childCount; i++) {
+            View cover = getChildAt(i);
+            if (cover.getVisibility() != VISIBLE || cover.getRotation() != 0 || !isOpaqueCard(cover)) {
+                continue;
+            }
+            getTransformedBounds(cover, mCoverBounds);
+            if (mCoverBounds.contains(mChildBounds)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells if the card draws over all of its bounds, either with its own background or with a child that fills
+     * it, as cards inflated from a layout often have their background on their content
+     * @param card
+     */
+    private static boolean isOpaqueCard(View card) {
+        if (card.isOpaque()) {
+            return true;
+        }
+        if (!(card instanceof ViewGroup) || card.getAlpha() < 1 || card.getScrollX() != 0 || card.getScrollY() != 0) {
+            return false;
+        }
+        ViewGroup group = (ViewGroup) card;
+        int childCount = group.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            View child = group.getChildAt(i);
+            if (child.getVisibility() == VISIBLE && child.getLeft() <= 0 && child.getTop() <= 0
+                    && child.getRight() >= card.getWidth() && child.getBottom() >= card.getHeight()
+                    && child.getMatrix().isIdentity() && isOpaqueCard(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the bounds of the view in the deck once it is translated and scaled
+     * @param view
+     * @param bounds
+     */
+    private static void getTransformedBounds(View view, RectF bounds) {
+        float scaleX = view.getScaleX();
+        float scaleY = view.getScaleY();
+        float left = view.getLeft() + view.getTranslationX() + view.getPivotX() * (1 - scaleX);
+        float top = view.getTop() + view.getTranslationY() + view.getPivotY() * (1 - scaleY);
+        bounds.set(left, top, left + view.getWidth() * scaleX, top + view.getHeight() * scaleY);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        isAttached = true;
+        mViewPool.addDeck();
+        getContext().getApplicationContext().registerComponentCallbacks(mComponentCallbacks);
+        if (mAdapter != null && mPendingPosition != INVALID_POSITION) {
+            applyPendingPosition();
+        }
+        if (isPrefetchEnabled && mPrefetchCallback.hasPendingCard()) {
+            mPrefetcher.schedule();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // Frame callbacks stop once the view is gone, so settle the swipe in progress right away
+        cancelPendingDrag();
+        if (isRiffling) {
+            endRiffle();
+        }
+        mCardAnimator.end();
+        mPrefetcher.cancel();
+        if (mSwipeFrameRecorder != null) {
+            mSwipeFrameRecorder.cancel();
+        }
+        removeReleasedViews();
+        getContext().getApplicationContext().unregisterComponentCallbacks(mComponentCallbacks);
+        super.onDetachedFromWindow();
+        mViewPool.removeDeck();
+        isAttached = false;
+    }
+
+    /**
+     * Binds the window at the pending position, once the adapter has items. If the item id of the pending
+     * position is known and the adapter has stable ids, the window is bound where the item is now.
+     */
+    private void applyPendingPosition() {
+        int count = mAdapter.getCount();
+        if (count <= 0) {
+            // Applied once the adapter has items
+            return;
+        }
+        int position = mPendingPosition;
+        if (mPendingItemId != INVALID_ROW_ID && mAdapter.hasStableIds()) {
+            int itemPosition = findItemPosition(mPendingItemId, Math.min(Math.max(position, 0), count - 1), count);
+            if (itemPosition != INVALID_POSITION) {
+                position = itemPosition;
+            }
+        }
+        mPendingPosition = INVALID_POSITION;
+        mPendingItemId = INVALID_ROW_ID;
+        releaseViews();
+        mWindow.setPosition(position);
+        ensureFull();
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        if (mPendingPosition != INVALID_POSITION) {
+            // Not bound yet, the pending position is still the one to restore
+            state.position = mPendingPosition;
+            state.itemId = mPendingItemId;
+        } else if (mAdapter != null && mWindow.getCount() > 0) {
+            state.position = mWindow.getPosition();
+            state.itemId = mAdapter.hasStableIds() ? mAdapter.getItemId(state.position) : INVALID_ROW_ID;
+        }
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        if (savedState.position == INVALID_POSITION) {
+            return;
+        }
+        mPendingPosition = savedState.position;
+        mPendingItemId = savedState.itemId;
+        if (isAttached && mAdapter != null) {
+            applyPendingPosition();
+        }
+    }
+
+    /**
+     * Position on display and the id of its item, if the adapter has stable ids
+     */
+    static class SavedState extends BaseSavedState {
+        int position = INVALID_POSITION;
+        long itemId = INVALID_ROW_ID;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            position = in.readInt();
+            itemId = in.readLong();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(position);
+            out.writeLong(itemId);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+    /**
+     * Gets the view for the given position from the adapter, re-using a released view if there is one,
+     * places it according to where the position is relative to the item on display and attaches it
+     * @param position Position of the item in the adapter
+     * @param addAtTop Indicates whether the view is added to the top of the screen or at the bottom
+     */
+    private View obtainView(int position, boolean addAtTop) {
+        View view = takeMatchedView(position);
+        if (view == null) {
+            view = bindView(position, null);
+        }
+        placeView(view, position);
+        attachCard(view, addAtTop ? -1 : 0);
+        return view;
+    }
+
+    /**
+     * Binds the item at the given position. If no convert view is given, a released view of the item's
+     * view type is used if there is one.
+     * @param position Position of the item in the adapter
+     * @param convertView View to bind or null
+     * @return The view returned by the adapter
+     */
+    private View bindView(int position, View convertView) {
+        int viewType = mAdapter.getItemViewType(position);
+        boolean fromRecycler = convertView == null;
+        if (fromRecycler) {
+            convertView = mViewPool.get(viewType);
+        }
+        // Binding makes the card request a layout, the card is measured and laid out on its own in setupChild
+        mBlockLayoutRequests = true;
+        long start = mStats != null ? System.nanoTime() : 0;
+        View view;
+        Trace.beginSection("CardDeck.getView");
+        try {
+            view = mAdapter.getView(position, convertView, this);
+        } finally {
+            Trace.endSection();
+            mBlockLayoutRequests = false;
+        }
+        if (mStats != null) {
+            mStats.onBind(System.nanoTime() - start, view != convertView, isPrefetchingCard);
+        }
+        if (convertView != null && view != convertView) {
+            if (fromRecycler) {
+                addReleasedView(viewType, convertView, true);
+            } else {
+                // The convert view was a card the adapter did not want to re-bind, it has already been detached
+                addReleasedView(((LayoutParams) convertView.getLayoutParams()).viewType, convertView, false);
+            }
+        }
+        ViewGroup.LayoutParams layoutParams = view.getLayoutParams();
+        LayoutParams params;
+        if (layoutParams == null) {
+            params = generateDefaultLayoutParams();
+        } else if (!checkLayoutParams(layoutParams)) {
+            params = generateLayoutParams(layoutParams);
+        } else {
+            params = (LayoutParams) layoutParams;
+        }
+        params.viewType = viewType;
+        params.itemId = mAdapter.getItemId(position);
+        params.item = mAdapter.getItem(position);
+        if (params != layoutParams) {
+            mBlockLayoutRequests = true;
+            try {
+                view.setLayoutParams(params);
+            } finally {
+                mBlockLayoutRequests = false;
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Places the view according to where the position is relative to the item on display
+     * @param view
+     * @param position Position of the item in the adapter
+     */
+    private void placeView(View view, int position) {
+        int visiblePosition = mWindow.getPosition();
+        if (position < visiblePosition) {
+            view.setX(-getWidth());
+            view.setScaleX(ZOOM_IN_SCALE_FACTOR);
+            view.setScaleY(ZOOM_IN_SCALE_FACTOR);
+        } else if (position > visiblePosition) {
+            view.setX(0);
+            view.setScaleX(ZOOM_OUT_SCALE_FACTOR);
+            view.setScaleY(ZOOM_OUT_SCALE_FACTOR);
+        } else {
+            view.setX(0);
+            view.setScaleX(ZOOM_IN_SCALE_FACTOR);
+            view.setScaleY(ZOOM_IN_SCALE_FACTOR);
+        }
+    }
+
+    /**
+     * Attaches a card at the given child index. Views that were already children of this view (released or
+     * detached cards) are re-attached, new views are added. The card is measured and laid out right away.
+     * @param view
+     * @param index
+     */
+    private void attachCard(View view, int index) {
+        LayoutParams params = (LayoutParams) view.getLayoutParams();
+        if (params.deck == this) {
+            // Detached from this deck, the card is still attached to the window
+            attachViewToParent(view, index, params);
+        } else {
+            if (params.deck != null) {
+                // Released by another deck sharing the pool, it leaves the window of that deck first
+                params.deck.removeDetachedView(view, false);
+            }
+            params.deck = this;
+            addViewInLayout(view, index, params, true);
+        }
+        setupChild(view);
+        invalidate();
+    }
+
+    /**
+     * Refreshes the references to the item on display and its neighbours from the buffer
+     */
+    private void updateDisplayedViews() {
+        int position = mWindow.getPosition();
+        mViewOnDisplay = mWindow.get(position);
+        mPreviousViewDisplayed = mWindow.get(position - 1);
+        mNextViewToDisplay = mWindow.get(position + 1);
+    }
+
+    /**
+     * Move to next element. If needed, it also fetches the next element from adapter
+     * and stores in the buffer
+     */
+    private void moveToNextElement() {
+        Trace.beginSection("CardDeck.moveToNext");
+        try {
+            if (mWindow.moveToNext()) {
+                ensureFull();
+            }
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Moves to the previous element. If needed, it fetches the previous element
+     * from the adapter and adds it to the buffer
+     */
+    private void moveToPrevElement() {
+        Trace.beginSection("CardDeck.moveToPrev");
+        try {
+            if (mWindow.moveToPrev()) {
+                ensureFull();
+            }
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Removes a view from the list and adds it to be re-used
+     * @param view
+     */
+    private void releaseView(View view) {
+        Trace.beginSection("CardDeck.releaseView");
+        try {
+            detachViewFromParent(view);
+            invalidate();
+            addReleasedView(((LayoutParams) view.getLayoutParams()).viewType, view, false);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Releases all views
+     */
+    private void releaseViews() {
+        if (isRiffling) {
+            endRiffle();
+        }
+        releaseCardLayers();
+        mWindow.releaseAll();
+        mViewOnDisplay = null;
+        mPreviousViewDisplayed = null;
+        mNextViewToDisplay = null;
+        if (mAdapter != null) {
+            mWindow.setCount(mAdapter.getCount());
+        }
+    }
+
+    /**
+     * Adds the released view to the view pool to be re-used. If there is no room for it, the view is dropped.
+     * @param viewType
+     * @param view
+     * @param unused Indicates the view was given to the adapter as convert view and the adapter did not use it
+     */
+    private void addReleasedView(int viewType, View view, boolean unused) {
+        boolean kept = unused ? mViewPool.putBack(viewType, view) : mViewPool.put(viewType, view);
+        if (!kept) {
+            removeReleasedView(view);
+        }
+    }
+
+    /**
+     * Completes the removal of a released view that is dropped or left behind, if it was detached from this deck
+     * @param view
+     */
+    private void removeReleasedView(View view) {
+        LayoutParams params = (LayoutParams) view.getLayoutParams();
+        if (params.deck == this) {
+            removeDetachedView(view, false);
+            params.deck = null;
+        }
+    }
+
+    /**
+     * Completes the removal of a released view that the pool drops, through the deck that released it if any
+     * @param view
+     */
+    static void dropReleasedView(View view) {
+        LayoutParams params = (LayoutParams) view.getLayoutParams();
+        if (params.deck != null) {
+            params.deck.removeReleasedView(view);
+        }
+    }
+
+    /**
+     * Completes the removal of the views this deck released to the pool, e.g. when the deck leaves the window.
+     * They stay in the pool and are attached again when they are re-used.
+     */
+    private void removeReleasedViews() {
+        for (int viewType = 0; viewType < mViewPool.getViewTypeCount(); viewType++) {
+            for (int i = 0; i < mViewPool.getScrapCount(viewType); i++) {
+                removeReleasedView(mViewPool.getScrapView(viewType, i));
+            }
+        }
+    }
+
+    /**
+     * Drops all the released views, including the ones other decks sharing the pool released
+     */
+    private void clearReleasedViews() {
+        for (int viewType = 0; viewType < mViewPool.getViewTypeCount(); viewType++) {
+            View view;
+            while ((view = mViewPool.drain(viewType)) != null) {
+                dropReleasedView(view);
+            }
+        }
+    }
+
+    @Override
+    protected LayoutParams generateDefaultLayoutParams() {
+        return new LayoutParams(LayoutParams.FILL_PARENT, LayoutParams.WRAP_CONTENT);
+    }
+
+    @Override
+    public LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new LayoutParams(getContext(), attrs);
+    }
+
+    @Override
+    protected LayoutParams generateLayoutParams(ViewGroup.LayoutParams p) {
+        return new LayoutParams(p);
+    }
+
+    @Override
+    protected boolean checkLayoutParams(ViewGroup.LayoutParams p) {
+        return p instanceof LayoutParams;
+    }
+
+    /**
+     * Layout params of the cards. They remember the adapter view type of the card so that it is
+     * recycled with the right type.
+     */
+    public static class LayoutParams extends ViewGroup.LayoutParams {
+
+        int viewType;
+        // Id and item bound to the card, used to match cards to items when the data set changes
+        long itemId;
+        Object item;
+        // Deck the card was last attached to. A card detached from its deck is still attached to the window until it
+        // is removed from the deck, which clears this.
+        CardDeckAdapterView deck;
+
+        public LayoutParams(Context c, AttributeSet attrs) {
+            super(c, attrs);
+        }
+
+        public LayoutParams(int width, int height) {
+            super(width, height);
+        }
+
+        public LayoutParams(ViewGroup.LayoutParams source) {
+            super(source);
+        }
+    }
+
+    /**
+     * Updates the buffer after a data set change by matching the buffered cards to the items using their ids.
+     * The item on display stays on display, even if items were inserted or removed before it. Cards whose
+     * item is still in the window are kept and only re-bound if their item changed, cards whose item left the
+     * window are released and missing items are bound.
+     * @return false if the adapter does not have stable ids or the item on display is gone, in which case
+     * the buffer needs to be rebuilt
+     */
+    private boolean updateFromStableIds() {
+        if (mAdapter == null || !mAdapter.hasStableIds() || mViewOnDisplay == null || isInAnimation) {
+            return false;
+        }
+        int count = mAdapter.getCount();
+        long displayedItemId = ((LayoutParams) mViewOnDisplay.getLayoutParams()).itemId;
+        int position = findItemPosition(displayedItemId, mWindow.getPosition(), count);
+        if (position == INVALID_POSITION) {
+            return false;
+        }
+
+        // Take all cards out, they are attached back in position order once they are matched
+        int staleCount = mWindow.drainTo(mStaleViews);
+        detachAllViewsFromParent();
+
+        mWindow.setCount(count);
+        int firstPosition = Math.max(0, position - mWindow.getLookBehind());
+        int lastPosition = Math.min(count - 1, position + mWindow.getLookAhead());
+
+        mMatchedFirstPosition = firstPosition;
+        for (int p = firstPosition; p <= lastPosition; p++) {
+            long itemId = mAdapter.getItemId(p);
+            for (int i = 0; i < staleCount; i++) {
+                View view = mStaleViews[i];
+                if (view != null && ((LayoutParams) view.getLayoutParams()).itemId == itemId) {
+                    mMatchedViews[p - firstPosition] = view;
+                    mStaleViews[i] = null;
+                    break;
+                }
+            }
+        }
+        rebindWindow(staleCount, position);
+        return true;
+    }
+
+    /**
+     * Updates the buffer after a data set change described by a diff. The positions of the buffered cards are
+     * moved through the operations of the diff, so unlike {@link #updateFromStableIds()} nothing is looked up in
+     * the adapter: cards that are still in the window are kept, and only re-bound if the diff changed their item.
+     * The item on display stays on display, if it was removed the item that took its place is shown.
+     * @param diff
+     * @return false if the diff can not be applied to the buffer, in which case it needs to be rebuilt
+     */
+    private boolean updateFromDiff(CardDeckDiff diff) {
+        if (mAdapter == null || mViewOnDisplay == null || isInAnimation || isDragging || isRiffling
+                || diff.getOldCount() != mWindow.getCount() || diff.getNewCount() != mAdapter.getCount()
+                || diff.getNewCount() == 0) {
+            return false;
+        }
+        int count = diff.getNewCount();
+        int position = mWindow.getPosition();
+        for (int i = 0; i < diff.size(); i++) {
+            int newPosition = diff.transformPosition(i, position);
+            position = newPosition == INVALID_POSITION ? diff.getPosition(i) : newPosition;
+        }
+        position = Math.min(position, count - 1);
+
+        int oldFirstPosition = mWindow.getFirstBoundPosition();
+        int staleCount = mWindow.drainTo(mStaleViews);
+        detachAllViewsFromParent();
+
+        mWindow.setCount(count);
+        int firstPosition = Math.max(0, position - mWindow.getLookBehind());
+        int lastPosition = Math.min(count - 1, position + mWindow.getLookAhead());
+
+        mMatchedFirstPosition = firstPosition;
+        for (int i = 0; i < staleCount; i++) {
+            int p = oldFirstPosition + i;
+            boolean changed = false;
+            for (int j = 0; j < diff.size() && p != INVALID_POSITION; j++) {
+                if (diff.getType(j) == CardDeckDiff.CHANGE) {
+                    changed |= p >= diff.getPosition(j) && p < diff.getPosition(j) + diff.getCount(j);
+                } else {
+                    p = diff.transformPosition(j, p);
+                }
+            }
+            if (p >= firstPosition && p <= lastPosition) {
+                mMatchedViews[p - firstPosition] = mStaleViews[i];
+                mMatchedChanged[p - firstPosition] = changed;
+                mStaleViews[i] = null;
+            }
+        }
+        rebindWindow(staleCount, position);
+        return true;
+    }
+
+    /**
+     * Releases the stale cards that were not matched and binds the window at the given position, re-using the
+     * matched cards
+     * @param staleCount
+     * @param position
+     */
+    private void rebindWindow(int staleCount, int position) {
+        for (int i = 0; i < staleCount; i++) {
+            View view = mStaleViews[i];
+            if (view != null) {
+                addReleasedView(((LayoutParams) view.getLayoutParams()).viewType, view, false);
+                mStaleViews[i] = null;
+            }
+        }
+
+        // The window binds the range again, obtainView hands it the matched cards first
+        mWindow.setPosition(position);
+        if (isPrefetchEnabled) {
+            // Only the matched cards around the card on display that are not bound again are taken now, the
+            // prefetcher binds the rest of the window in the idle time of the next frames
+            mWindow.fill(countUnchangedMatchedViews(position, -1), countUnchangedMatchedViews(position, 1));
+        } else {
+            mWindow.fill();
+        }
+        for (int i = 0; i < mMatchedViews.length; i++) {
+            if (mMatchedViews[i] != null) {
+                addReleasedView(((LayoutParams) mMatchedViews[i].getLayoutParams()).viewType, mMatchedViews[i], false);
+                mMatchedViews[i] = null;
+            }
+            mMatchedChanged[i] = false;
+        }
+        // The items of the window changed even if its positions did not
+        mPrefetchWindowStart = INVALID_POSITION;
+        ensureFull();
+    }
+
+    /**
+     * Counts the matched cards next to each other from the given position in the given direction, whose item
+     * did not change
+     * @param position
+     * @param step -1 to count the previous cards, 1 to count the next cards
+     */
+    private int countUnchangedMatchedViews(int position, int step) {
+        int count = 0;
+        int index = position + step - mMatchedFirstPosition;
+        while (index >= 0 && index < mMatchedViews.length && mMatchedViews[index] != null
+                && !isMatchedViewChanged(index, position + step * (count + 1))) {
+            count++;
+            index += step;
+        }
+        return count;
+    }
+
+    private boolean isMatchedViewChanged(int index, int position) {
+        Object item = ((LayoutParams) mMatchedViews[index].getLayoutParams()).item;
+        Object newItem = mAdapter.getItem(position);
+        return mMatchedChanged[index] || (item == null ? newItem != null : !item.equals(newItem));
+    }
+
+    /**
+     * Returns the card matched to the given position during {@link #updateFromStableIds()} or
+     * {@link #updateFromDiff(CardDeckDiff)}, re-bound if its item changed, or null if there is none
+     * @param position
+     */
+    private View takeMatchedView(int position) {
+        int index = position - mMatchedFirstPosition;
+        if (index < 0 || index >= mMatchedViews.length || mMatchedViews[index] == null) {
+            return null;
+        }
+        View view = mMatchedViews[index];
+        boolean isChanged = isMatchedViewChanged(index, position);
+        mMatchedViews[index] = null;
+        if (isChanged) {
+            view = bindView(position, view);
+        }
+        return view;
+    }
+
+    /**
+     * Finds the position of the item with the given id, searching outwards from the position where the item
+     * is expected to be. Only the items up to {@link #MAX_ITEM_SEARCH_DISTANCE} away are looked at, so large
+     * adapters are not scanned on the UI thread; callers stay at the expected position otherwise.
+     * @param itemId
+     * @param expectedPosition
+     * @param count Number of items in the adapter
+     * @return The position of the item or INVALID_POSITION if there is no item with the given id near the
+     * expected position
+     */
+    private int findItemPosition(long itemId, int expectedPosition, int count) {
+        int maxDistance = Math.min(MAX_ITEM_SEARCH_DISTANCE, Math.max(expectedPosition, count - 1 - expectedPosition));
+        for (int distance = 0; distance <= maxDistance; distance++) {
+            int after = expectedPosition + distance;
+            if (after >= 0 && after < count && mAdapter.getItemId(after) == itemId) {
+                return after;
+            }
+            int before = expectedPosition - distance;
+            if (before >= 0 && before < count && mAdapter.getItemId(before) == itemId) {
+                return before;
+            }
+        }
+        return INVALID_POSITION;
+    }
+
+    /**
+     * Listens to data set change events
+     */
+    private final DataSetObserver mDataSetObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            super.onChanged();
+            if (isDiffApplied) {
+                isDiffApplied = false;
+                return;
+            }
+            if (mPendingPosition != INVALID_POSITION) {
+                // Nothing was bound yet, the window is bound at the pending position once possible
+                releaseViews();
+                if (isAttached) {
+                    applyPendingPosition();
+                }
+                return;
+            }
+            if (updateFromStableIds()) {
+                return;
+            }
+            int oldAdapterCount = mWindow.getCount();
+            // Releasing the views also takes the new count, which moves the position to the last item if it
+            // is past the end
+            releaseViews();
+            mWindow.setPosition(oldAdapterCount <= 0 ? 0 : mWindow.getPosition());
+            ensureFull();
+        }
+
+        @Override
+        public void onInvalidated() {
+            super.onInvalidated();
+            releaseViews();
+            mWindow.setCount(0);
+        }
+    };
+
+    /**
+     * Applies the diffs of adapters that send them, the data set change notification that follows is then skipped
+     */
+    private final CardDeckDiff.Observer mDiffObserver = new CardDeckDiff.Observer() {
+        @Override
+        public void onDataSetDiff(CardDeckDiff diff) {
+            isDiffApplied = mPendingPosition == INVALID_POSITION && updateFromDiff(diff);
+        }
+    };
+
+    /**
+     * Listens to animation events
+     */
+    private final CardDeckAnimator.Listener animatorListener = new CardDeckAnimator.Listener() {
+        @Override
+        public void onAnimationEnd() {
+            if (isRiffling) {
+                if (++mRiffleStep < mRiffleViewCount) {
+                    startRiffleStep();
+                } else {
+                    finishRiffle();
+                    invalidate();
+                }
+                return;
+            }
+            releaseCardLayers();
+            if (isLeftDrag && !isRightDrag) {
+                moveToNextElement();
+            } else if (!isLeftDrag && isRightDrag) {
+                moveToPrevElement();
+            }
+            isLeftDrag = isRightDrag = false;
+            isInAnimation = false;
+            // The cards that were animated can be culled again
+            invalidate();
+            finishSwipe();
+        }
+    };
+}
@@ -0,0 +1,332 @@
+package com.ashish.ui.view;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.TimeInterpolator;
+import android.content.Context;
+import android.provider.Settings;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewPropertyAnimator;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.DecelerateInterpolator;
+
+/**
+ * Re-usable animation engine for the card deck. A single instance animates a few properties of a few cards
+ * together and is started again for every swipe. It is driven by Choreographer frame callbacks and keeps the
+ * animated values in primitive arrays, so once it is created starting and running an animation does not allocate.
+ * The progress of all the properties follows a critically damped spring that starts with the velocity the
+ * card was released with, so fast releases settle quickly and slow ones ease in, and the animation can be
+ * cancelled at any point to let a new touch take over the cards.
+ * It can also hand the animation over to {@link ViewPropertyAnimator}, which lets the cards animate on their
+ * hardware layers, the animation then ends once the animators of all the cards reported their end.
+ */
+class CardDeckAnimator implements Choreographer.FrameCallback {
+
+    /**
+     * Typed card property. Unlike {@link android.util.Property} it reads and writes primitive floats, so
+     * animating it does not box values on every frame.
+     */
+    abstract static class CardProperty {
+        abstract float get(View view);
+
+        abstract void set(View view, float value);
+
+        abstract void animate(ViewPropertyAnimator animator, float value);
+    }
+
+    static final CardProperty X = new CardProperty() {
+        @Override
+        float get(View view) {
+            return view.getX();
+        }
+
+        @Override
+        void set(View view, float value) {
+            view.setX(value);
+        }
+
+        @Override
+        void animate(ViewPropertyAnimator animator, float value) {
+            animator.x(value);
+        }
+    };
+
+    /**
+     * Scales the card by the same factor in both directions
+     */
+    static final CardProperty SCALE = new CardProperty() {
+        @Override
+        float get(View view) {
+            return view.getScaleX();
+        }
+
+        @Override
+        void set(View view, float value) {
+            view.setScaleX(value);
+            view.setScaleY(value);
+        }
+
+        @Override
+        void animate(ViewPropertyAnimator animator, float value) {
+            animator.scaleX(value).scaleY(value);
+        }
+    };
+
+    interface Listener {
+        /**
+         * Called once all the properties reached their final value
+         */
+        void onAnimationEnd();
+    }
+
+    private static final int MAX_TRACKS = 4;
+    // Longest duration of ViewPropertyAnimator animations, used when the cards are released without velocity
+    private static final long DEFAULT_DURATION = 300;
+    private static final long MIN_DURATION = 100;
+    // Angular frequency of the spring in radians per second. At rest, the spring covers 99.9% of the distance in ~370ms
+    static final float DEFAULT_SPRING_FREQUENCY = 25f;
+    // The spring is at rest once it is this close to the end and slower than this (in fractions of the distance)
+    private static final float REST_DISPLACEMENT = 0.001f;
+    private static final float REST_VELOCITY = 0.01f;
+
+    // Each track animates one property of one view
+    private final View[] mViews = new View[MAX_TRACKS];
+    private final CardProperty[] mProperties = new CardProperty[MAX_TRACKS];
+    private final float[] mFromValues = new float[MAX_TRACKS];
+    private final float[] mToValues = new float[MAX_TRACKS];
+    private int mTrackCount;
+
+    private final Listener mListener;
+    // Interpolators of ViewPropertyAnimator animations, for cards released without and with velocity
+    private final TimeInterpolator mRestInterpolator = new AccelerateDecelerateInterpolator();
+    private final TimeInterpolator mReleaseInterpolator = new DecelerateInterpolator();
+    private long mDuration;
+    private final float mDurationScale;
+    private float mSpringFrequency;
+    private long mStartTimeNanos;
+    // Initial velocity of the running animation in fractions of the distance per second
+    private float mStartVelocity;
+    private boolean isRunning;
+    private boolean useViewPropertyAnimator;
+    // Indicates the running animation was handed over to ViewPropertyAnimator
+    private boolean isOnViewPropertyAnimator;
+    // Number of ViewPropertyAnimator animations that did not end yet
+    private int mPendingViewAnimations;
+
+    CardDeckAnimator(Context context, Listener listener) {
+        mListener = listener;
+        mDuration = DEFAULT_DURATION;
+        mSpringFrequency = DEFAULT_SPRING_FREQUENCY;
+        // Follow the animator duration scale of the developer options like the framework animators do
+        mDurationScale = Settings.Global.getFloat(context.getContentResolver(), Settings.Global.ANIMATOR_DURATION_SCALE, 1.0f);
+    }
+
+    void setDuration(long duration) {
+        mDuration = duration;
+    }
+
+    long getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * Sets how stiff the spring driving the animations is. Higher frequencies settle faster.
+     * @param frequency Angular frequency in radians per second
+     */
+    void setSpringFrequency(float frequency) {
+        mSpringFrequency = frequency;
+    }
+
+    boolean isRunning() {
+        return isRunning;
+    }
+
+    /**
+     * Tells if the running animation animates a property of the view
+     * @param view
+     */
+    boolean isAnimating(View view) {
+        for (int i = 0; i < mTrackCount; i++) {
+            if (mViews[i] == view) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the following animations through the views' {@link ViewPropertyAnimator} instead of frame callbacks
+     * @param use
+     */
+    void setUseViewPropertyAnimator(boolean use) {
+        useViewPropertyAnimator = use;
+    }
+
+    /**
+     * Animates the property of the view from its current value to the given value when the animation is started
+     * @param view
+     * @param property
+     * @param toValue
+     */
+    CardDeckAnimator add(View view, CardProperty property, float toValue) {
+        mViews[mTrackCount] = view;
+        mProperties[mTrackCount] = property;
+        mFromValues[mTrackCount] = property.get(view);
+        mToValues[mTrackCount] = toValue;
+        mTrackCount++;
+        return this;
+    }
+
+    /**
+     * Starts animating the properties
+     * @param velocity Initial velocity towards the final values, as the fraction of the distance covered per second
+     */
+    void start(float velocity) {
+        isRunning = true;
+        mStartVelocity = Math.max(0, velocity);
+        isOnViewPropertyAnimator = useViewPropertyAnimator;
+        if (isOnViewPropertyAnimator) {
+            startViewPropertyAnimators();
+            return;
+        }
+        mStartTimeNanos = -1;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void startViewPropertyAnimators() {
+        long duration = getViewPropertyAnimatorDuration();
+        for (int i = 0; i < mTrackCount; i++) {
+            ViewPropertyAnimator animator = mViews[i].animate();
+            if (isFirstTrackOfView(i)) {
+                animator.setDuration(duration)
+                        .setInterpolator(mStartVelocity > 0 ? mReleaseInterpolator : mRestInterpolator)
+                        .setListener(mViewAnimatorListener);
+                mPendingViewAnimations++;
+            }
+            mProperties[i].animate(animator, mToValues[i]);
+        }
+    }
+
+    /**
+     * ViewPropertyAnimator runs on a duration rather than a spring. With a decelerate interpolator the
+     * animation starts at twice its average speed, so the duration that matches the start velocity is
+     * twice the time it takes to cover the distance at that velocity.
+     */
+    private long getViewPropertyAnimatorDuration() {
+        if (mStartVelocity <= 0) {
+            return mDuration;
+        }
+        return Math.max(MIN_DURATION, Math.min(mDuration, (long) (2000 / mStartVelocity)));
+    }
+
+    private boolean isFirstTrackOfView(int track) {
+        for (int i = 0; i < track; i++) {
+            if (mViews[i] == mViews[track]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void cancelViewPropertyAnimators() {
+        if (!isOnViewPropertyAnimator) {
+            return;
+        }
+        mPendingViewAnimations = 0;
+        for (int i = 0; i < mTrackCount; i++) {
+            // Without listener the cancelled animators do not report their end
+            mViews[i].animate().setListener(null).cancel();
+        }
+    }
+
+    /**
+     * Moves all the properties to their final value and notifies the listener
+     */
+    void end() {
+        if (!isRunning) {
+            return;
+        }
+        Choreographer.getInstance().removeFrameCallback(this);
+        cancelViewPropertyAnimators();
+        apply(1.0f);
+        finish();
+    }
+
+    /**
+     * Stops the animation where it is, without notifying the listener
+     */
+    void cancel() {
+        if (!isRunning) {
+            return;
+        }
+        Choreographer.getInstance().removeFrameCallback(this);
+        cancelViewPropertyAnimators();
+        clearTracks();
+        isRunning = false;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!isRunning) {
+            return;
+        }
+        if (mStartTimeNanos < 0) {
+            mStartTimeNanos = frameTimeNanos;
+        }
+        if (mDurationScale <= 0) {
+            apply(1.0f);
+            finish();
+            return;
+        }
+        float t = (frameTimeNanos - mStartTimeNanos) / (1000000000f * mDurationScale);
+        // Critically damped spring going from 0 to 1: x(t) = 1 + (a + b * t) * e^(-w * t)
+        float w = mSpringFrequency;
+        float a = -1;
+        float b = mStartVelocity + w * a;
+        float decay = (float) Math.exp(-w * t);
+        float displacement = (a + b * t) * decay;
+        float velocity = (b - w * (a + b * t)) * decay;
+        float fraction = 1 + displacement;
+        if (fraction >= 1.0f || (Math.abs(displacement) < REST_DISPLACEMENT && Math.abs(velocity) < REST_VELOCITY)) {
+            // Fast releases would overshoot the end, the cards stop there instead
+            apply(1.0f);
+            finish();
+            return;
+        }
+        apply(fraction);
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Ends the animation once the ViewPropertyAnimator animations of all the cards are over
+     */
+    private final Animator.AnimatorListener mViewAnimatorListener = new AnimatorListenerAdapter() {
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (isRunning && isOnViewPropertyAnimator && --mPendingViewAnimations == 0) {
+                finish();
+            }
+        }
+    };
+
+    private void apply(float fraction) {
+        for (int i = 0; i < mTrackCount; i++) {
+            mProperties[i].set(mViews[i], mFromValues[i] + (mToValues[i] - mFromValues[i]) * fraction);
+        }
+    }
+
+    private void finish() {
+        clearTracks();
+        isRunning = false;
+        mListener.onAnimationEnd();
+    }
+
+    private void clearTracks() {
+        for (int i = 0; i < mTrackCount; i++) {
+            mViews[i] = null;
+            mProperties[i] = null;
+        }
+        mTrackCount = 0;
+    }
+}
@@ -0,0 +1,348 @@
+package com.ashish.ui.view;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Difference between two versions of the data set of a card deck adapter, as a list of operations that turn the
+ * old list into the new one when applied in order: ranges of removed and inserted items, moved items and ranges of
+ * items whose content changed. The positions of every operation are relative to the list as the previous
+ * operations left it.
+ * <p>
+ * Items are matched by key, and the items that keep their order relative to each other are the longest increasing
+ * run of matched items, so the diff is computed in O(n log n) plus O(n) per moved item. It only uses plain Java, so
+ * it can be computed on any thread.
+ * <p>
+ * An adapter that computes diffs implements {@link Observable}, and {@link CardDeckAdapterView} then updates only the
+ * cards that the operations touch instead of matching all the bound cards again.
+ */
+public class CardDeckDiff {
+
+    /**
+     * Tells how items of the two lists relate
+     */
+    public interface ItemCallback<T> {
+        /**
+         * Returns the identity of the item. Items of the old and new lists with equal keys are the same item, which
+         * may have moved or changed.
+         * @param item
+         */
+        Object getKey(T item);
+
+        /**
+         * Tells if the same item still shows the same content, otherwise its card is bound again
+         * @param oldItem
+         * @param newItem
+         */
+        boolean areContentsTheSame(T oldItem, T newItem);
+    }
+
+    /**
+     * Receives the diffs of an adapter, on the UI thread
+     */
+    public interface Observer {
+        /**
+         * Called once the adapter holds the new list, before the adapter notifies its data set observers
+         * @param diff
+         */
+        void onDataSetDiff(CardDeckDiff diff);
+    }
+
+    /**
+     * Adapter that describes its data set changes with diffs
+     */
+    public interface Observable {
+        void registerDiffObserver(Observer observer);
+
+        void unregisterDiffObserver(Observer observer);
+    }
+
+    public static final int INSERT = 0;
+    public static final int REMOVE = 1;
+    public static final int MOVE = 2;
+    public static final int CHANGE = 3;
+
+    private static final int NO_POSITION = -1;
+
+    private final int mOldCount;
+    private final int mNewCount;
+    // Position in the old list of every item of the new list, NO_POSITION for inserted items
+    private final int[] mOldPositions;
+    // Operations as (type, position, count) triples. The count of a move is its destination position.
+    private int[] mOperations = new int[3 * 8];
+    private int mOperationCount;
+
+    private CardDeckDiff(int oldCount, int newCount) {
+        mOldCount = oldCount;
+        mNewCount = newCount;
+        mOldPositions = new int[newCount];
+    }
+
+    /**
+     * Computes the operations that turn the old list into the new one
+     * @param oldItems
+     * @param newItems
+     * @param callback
+     */
+    public static <T> CardDeckDiff calculate(List<T> oldItems, List<T> newItems, ItemCallback<? super T> callback) {
+        int oldCount = oldItems.size();
+        int newCount = newItems.size();
+        CardDeckDiff diff = new CardDeckDiff(oldCount, newCount);
+
+        // New positions by key, items with the same key are chained in order and matched in order
+        HashMap<Object, Integer> firstNewPositions = new HashMap<>(newCount * 2);
+        HashMap<Object, Integer> lastNewPositions = new HashMap<>(newCount * 2);
+        int[] nextNewPositions = new int[newCount];
+        for (int i = 0; i < newCount; i++) {
+            Object key = callback.getKey(newItems.get(i));
+            nextNewPositions[i] = NO_POSITION;
+            Integer last = lastNewPositions.put(key, i);
+            if (last == null) {
+                firstNewPositions.put(key, i);
+            } else {
+                nextNewPositions[last] = i;
+            }
+            diff.mOldPositions[i] = NO_POSITION;
+        }
+        int[] newPositions = new int[oldCount];
+        for (int i = 0; i < oldCount; i++) {
+            Object key = callback.getKey(oldItems.get(i));
+            Integer newPosition = firstNewPositions.get(key);
+            if (newPosition == null) {
+                newPositions[i] = NO_POSITION;
+            } else {
+                newPositions[i] = newPosition;
+                diff.mOldPositions[newPosition] = i;
+                int next = nextNewPositions[newPosition];
+                if (next == NO_POSITION) {
+                    firstNewPositions.remove(key);
+                } else {
+                    firstNewPositions.put(key, next);
+                }
+            }
+        }
+
+        // Removed items, from the end so that the positions before them stay valid
+        for (int i = oldCount - 1; i >= 0; i--) {
+            if (newPositions[i] == NO_POSITION) {
+                diff.addRange(REMOVE, i);
+            }
+        }
+
+        // What is left are the matched items in the old order, identified by their new position
+        int[] items = new int[oldCount];
+        int itemCount = 0;
+        for (int i = 0; i < oldCount; i++) {
+            if (newPositions[i] != NO_POSITION) {
+                items[itemCount++] = newPositions[i];
+            }
+        }
+        boolean[] settled = new boolean[newCount];
+        markLongestIncreasingRun(items, itemCount, settled);
+        // The other matched items move next to the settled items, in new list order so that each lands after its
+        // settled predecessor
+        for (int newPosition = 0; newPosition < newCount; newPosition++) {
+            if (diff.mOldPositions[newPosition] == NO_POSITION || settled[newPosition]) {
+                continue;
+            }
+            int from = indexOf(items, itemCount, newPosition);
+            System.arraycopy(items, from + 1, items, from, itemCount - from - 1);
+            itemCount--;
+            int to = 0;
+            for (int i = itemCount - 1; i >= 0; i--) {
+                if (settled[items[i]] && items[i] < newPosition) {
+                    to = i + 1;
+                    break;
+                }
+            }
+            System.arraycopy(items, to, items, to + 1, itemCount - to);
+            items[to] = newPosition;
+            itemCount++;
+            settled[newPosition] = true;
+            if (from != to) {
+                diff.addOperation(MOVE, from, to);
+            }
+        }
+
+        // The matched items are in the new order, the inserted items go in between in increasing positions
+        for (int i = 0; i < newCount; i++) {
+            if (diff.mOldPositions[i] == NO_POSITION) {
+                diff.addRange(INSERT, i);
+            }
+        }
+        for (int i = 0; i < newCount; i++) {
+            int oldPosition = diff.mOldPositions[i];
+            if (oldPosition != NO_POSITION && !callback.areContentsTheSame(oldItems.get(oldPosition), newItems.get(i))) {
+                diff.addRange(CHANGE, i);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Marks the items of the longest run of increasing values of the array
+     */
+    private static void markLongestIncreasingRun(int[] items, int count, boolean[] marks) {
+        // Patience sorting: tails[k] is the index of the smallest tail of the runs of length k + 1
+        int[] tails = new int[count];
+        int[] previous = new int[count];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (items[tails[middle]] < items[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : NO_POSITION;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        for (int i = length > 0 ? tails[length - 1] : NO_POSITION; i != NO_POSITION; i = previous[i]) {
+            marks[items[i]] = true;
+        }
+    }
+
+    private static int indexOf(int[] items, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (items[i] == value) {
+                return i;
+            }
+        }
+        return NO_POSITION;
+    }
+
+    /**
+     * Adds a single position to the last operation if it has the same type and extends its range, otherwise adds
+     * a new operation. Removals are added from the end so they extend their range downwards.
+     */
+    private void addRange(int type, int position) {
+        if (mOperationCount > 0) {
+            int last = 3 * (mOperationCount - 1);
+            if (mOperations[last] == type) {
+                if (type == REMOVE && mOperations[last + 1] == position + 1) {
+                    mOperations[last + 1] = position;
+                    mOperations[last + 2]++;
+                    return;
+                } else if (type != REMOVE && mOperations[last + 1] + mOperations[last + 2] == position) {
+                    mOperations[last + 2]++;
+                    return;
+                }
+            }
+        }
+        addOperation(type, position, 1);
+    }
+
+    private void addOperation(int type, int position, int count) {
+        if (3 * (mOperationCount + 1) > mOperations.length) {
+            int[] operations = new int[mOperations.length * 2];
+            System.arraycopy(mOperations, 0, operations, 0, 3 * mOperationCount);
+            mOperations = operations;
+        }
+        int index = 3 * mOperationCount;
+        mOperations[index] = type;
+        mOperations[index + 1] = position;
+        mOperations[index + 2] = count;
+        mOperationCount++;
+    }
+
+    public int getOldCount() {
+        return mOldCount;
+    }
+
+    public int getNewCount() {
+        return mNewCount;
+    }
+
+    /**
+     * Returns the number of operations
+     */
+    public int size() {
+        return mOperationCount;
+    }
+
+    /**
+     * Returns the type of the operation: {@link #INSERT}, {@link #REMOVE}, {@link #MOVE} or {@link #CHANGE}
+     * @param index
+     */
+    public int getType(int index) {
+        return mOperations[3 * index];
+    }
+
+    /**
+     * Returns the 1st position of the range of the operation, or the position the item moves from
+     * @param index
+     */
+    public int getPosition(int index) {
+        return mOperations[3 * index + 1];
+    }
+
+    /**
+     * Returns the number of items of the range of the operation. Not valid for moves.
+     * @param index
+     */
+    public int getCount(int index) {
+        return mOperations[3 * index + 2];
+    }
+
+    /**
+     * Returns the position a moved item ends at, once it was taken out of its previous position
+     * @param index
+     */
+    public int getToPosition(int index) {
+        return mOperations[3 * index + 2];
+    }
+
+    /**
+     * Returns the position in the old list of an item of the new list, or -1 if it was inserted
+     * @param newPosition
+     */
+    public int getOldPosition(int newPosition) {
+        return mOldPositions[newPosition];
+    }
+
+    /**
+     * Returns where a position of the list ends up once the operations are applied, or -1 if its item is removed
+     * @param position Position in the old list
+     */
+    public int transformPosition(int position) {
+        for (int i = 0; i < mOperationCount && position != NO_POSITION; i++) {
+            position = transformPosition(i, position);
+        }
+        return position;
+    }
+
+    /**
+     * Applies one operation to a position
+     * @param index Index of the operation
+     * @param position Position in the list before the operation
+     * @return The position after the operation, or -1 if its item is removed
+     */
+    public int transformPosition(int index, int position) {
+        int start = getPosition(index);
+        switch (getType(index)) {
+            case INSERT:
+                return position >= start ? position + getCount(index) : position;
+            case REMOVE:
+                if (position < start) {
+                    return position;
+                }
+                return position < start + getCount(index) ? NO_POSITION : position - getCount(index);
+            case MOVE:
+                if (position == start) {
+                    return getToPosition(index);
+                }
+                if (position > start) {
+                    position--;
+                }
+                return position >= getToPosition(index) ? position + 1 : position;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,321 @@
+package com.ashish.ui.view;
+
+import android.content.Context;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.support.v7.widget.LinearSmoothScroller;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import static com.ashish.ui.view.CardDeckAdapterView.ZOOM_IN_SCALE_FACTOR;
+import static com.ashish.ui.view.CardDeckAdapterView.ZOOM_OUT_SCALE_FACTOR;
+
+/**
+ * Lays out the items of a RecyclerView as a deck of cards, with the same swipe as {@link CardDeckAdapterView}:
+ * scrolling forward slides the card on display out to the left while the next card zooms in from under it, and
+ * scrolling back slides the previous card in from the left over the card on display, which zooms out.
+ * <p>
+ * Every card fills the RecyclerView. Besides the cards that show, the previous and next cards are laid out off
+ * the edges so that a swipe never binds in its 1st frame, and the card after them is announced to the prefetch of
+ * RecyclerView. Cards with lower positions are drawn above cards with higher positions.
+ * Use it with {@link CardDeckSnapHelper} to settle on one card at a time.
+ */
+public class CardDeckLayoutManager extends RecyclerView.LayoutManager
+        implements RecyclerView.SmoothScroller.ScrollVectorProvider {
+
+    private static final String STATE_POSITION = "position";
+
+    // Scroll position in pixels, each card takes the width of the RecyclerView
+    private int mScrollOffset;
+    // Card width the scroll offset was computed with
+    private int mCardWidth;
+    // Position to show on the next layout, NO_POSITION if there is none
+    private int mPendingPosition = RecyclerView.NO_POSITION;
+    private final Rect mDecorInsets = new Rect();
+
+    @Override
+    public RecyclerView.LayoutParams generateDefaultLayoutParams() {
+        return new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+    }
+
+    @Override
+    public boolean canScrollHorizontally() {
+        return true;
+    }
+
+    /**
+     * Returns the position of the card on display, or of the card sliding out while scrolling
+     */
+    public int getCurrentPosition() {
+        int cardWidth = getCardWidth();
+        if (mPendingPosition != RecyclerView.NO_POSITION || cardWidth <= 0) {
+            return mPendingPosition == RecyclerView.NO_POSITION ? 0 : mPendingPosition;
+        }
+        return mScrollOffset / cardWidth;
+    }
+
+    /**
+     * Returns the distance to scroll to show the card at the given position
+     * @param position
+     */
+    int getDistanceToPosition(int position) {
+        return position * getCardWidth() - mScrollOffset;
+    }
+
+    @Override
+    public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        int itemCount = state.getItemCount();
+        if (itemCount == 0) {
+            removeAndRecycleAllViews(recycler);
+            mScrollOffset = 0;
+            return;
+        }
+        int cardWidth = getCardWidth();
+        if (cardWidth <= 0) {
+            // Nothing to show yet, the pending position is kept for the next layout
+            detachAndScrapAttachedViews(recycler);
+            return;
+        }
+        if (mPendingPosition != RecyclerView.NO_POSITION) {
+            mScrollOffset = Math.min(mPendingPosition, itemCount - 1) * cardWidth;
+            mPendingPosition = RecyclerView.NO_POSITION;
+        } else if (mCardWidth > 0 && mCardWidth != cardWidth) {
+            // The RecyclerView was resized, it keeps showing the same cards
+            mScrollOffset = Math.round((float) mScrollOffset / mCardWidth * cardWidth);
+        }
+        mCardWidth = cardWidth;
+        mScrollOffset = Math.max(0, Math.min(mScrollOffset, getMaxScrollOffset(itemCount)));
+        // Cards are laid out again at the size of the RecyclerView, which may have changed
+        detachAndScrapAttachedViews(recycler);
+        fill(recycler, itemCount);
+    }
+
+    @Override
+    public int scrollHorizontallyBy(int dx, RecyclerView.Recycler recycler, RecyclerView.State state) {
+        int itemCount = state.getItemCount();
+        if (getChildCount() == 0 || itemCount == 0) {
+            return 0;
+        }
+        int offset = Math.max(0, Math.min(mScrollOffset + dx, getMaxScrollOffset(itemCount)));
+        int consumed = offset - mScrollOffset;
+        mScrollOffset = offset;
+        fill(recycler, itemCount);
+        return consumed;
+    }
+
+    private int getMaxScrollOffset(int itemCount) {
+        return (itemCount - 1) * getCardWidth();
+    }
+
+    private int getCardWidth() {
+        return getWidth() - getPaddingLeft() - getPaddingRight();
+    }
+
+    private int getCardHeight() {
+        return getHeight() - getPaddingTop() - getPaddingBottom();
+    }
+
+    /**
+     * Recycles the cards that left the deck, adds the ones that entered it and moves them all to where the scroll
+     * offset puts them. Cards that stay only move, they are not laid out again.
+     */
+    private void fill(RecyclerView.Recycler recycler, int itemCount) {
+        int cardWidth = getCardWidth();
+        if (cardWidth <= 0) {
+            return;
+        }
+        int position = mScrollOffset / cardWidth;
+        int fraction = mScrollOffset - position * cardWidth;
+        int firstPosition = Math.max(0, position - 1);
+        int lastPosition = Math.min(itemCount - 1, position + (fraction > 0 ? 2 : 1));
+
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            View child = getChildAt(i);
+            int childPosition = getPosition(child);
+            if (childPosition < firstPosition || childPosition > lastPosition) {
+                removeAndRecycleView(child, recycler);
+            }
+        }
+        for (int p = lastPosition; p >= firstPosition; p--) {
+            View view = findViewByPosition(p);
+            int left = getCardLeft(p, position, fraction, cardWidth);
+            if (view == null) {
+                view = recycler.getViewForPosition(p);
+                // Children are kept from the highest position to the lowest, so lower positions are drawn above
+                addView(view, getChildIndex(p));
+                measureCard(view);
+                layoutDecoratedWithMargins(view, left, getPaddingTop(), left + cardWidth, getPaddingTop() + getCardHeight());
+            } else {
+                RecyclerView.LayoutParams params = (RecyclerView.LayoutParams) view.getLayoutParams();
+                view.offsetLeftAndRight(left - (getDecoratedLeft(view) - params.leftMargin));
+            }
+            float scale = getCardScale(p, position, fraction, cardWidth);
+            view.setScaleX(scale);
+            view.setScaleY(scale);
+        }
+    }
+
+    /**
+     * Previous cards wait off the left edge, the card on display slides out to the left, the card under it stays
+     * in place and the next cards wait off the right edge until they come under the card on display
+     */
+    private int getCardLeft(int p, int position, int fraction, int cardWidth) {
+        if (p < position) {
+            return getPaddingLeft() - cardWidth;
+        } else if (p == position) {
+            return getPaddingLeft() - fraction;
+        } else if (p == position + 1 && fraction > 0) {
+            return getPaddingLeft();
+        }
+        return getPaddingLeft() + cardWidth;
+    }
+
+    /**
+     * The card under the card on display zooms in as the card on display slides out
+     */
+    private float getCardScale(int p, int position, int fraction, int cardWidth) {
+        if (p <= position) {
+            return ZOOM_IN_SCALE_FACTOR;
+        }
+        if (p == position + 1) {
+            return ZOOM_OUT_SCALE_FACTOR + (ZOOM_IN_SCALE_FACTOR - ZOOM_OUT_SCALE_FACTOR) * fraction / cardWidth;
+        }
+        return ZOOM_OUT_SCALE_FACTOR;
+    }
+
+    /**
+     * Returns the child index a card is added at, after the cards with higher positions
+     */
+    private int getChildIndex(int position) {
+        int index = 0;
+        while (index < getChildCount() && getPosition(getChildAt(index)) > position) {
+            index++;
+        }
+        return index;
+    }
+
+    private void measureCard(View view) {
+        RecyclerView.LayoutParams params = (RecyclerView.LayoutParams) view.getLayoutParams();
+        calculateItemDecorationsForChild(view, mDecorInsets);
+        int width = getCardWidth() - mDecorInsets.left - mDecorInsets.right - params.leftMargin - params.rightMargin;
+        int height = getCardHeight() - mDecorInsets.top - mDecorInsets.bottom - params.topMargin - params.bottomMargin;
+        view.measure(View.MeasureSpec.makeMeasureSpec(Math.max(0, width), View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(Math.max(0, height), View.MeasureSpec.EXACTLY));
+    }
+
+    /**
+     * Announces the card that comes next in the direction of the scroll, so that RecyclerView binds it in idle time
+     */
+    @Override
+    public void collectAdjacentPrefetchPositions(int dx, int dy, RecyclerView.State state,
+                                                 LayoutPrefetchRegistry layoutPrefetchRegistry) {
+        int cardWidth = getCardWidth();
+        if (dx == 0 || getChildCount() == 0 || cardWidth <= 0) {
+            return;
+        }
+        int position = mScrollOffset / cardWidth;
+        int fraction = mScrollOffset - position * cardWidth;
+        if (dx > 0) {
+            // The card after the one under the card on display, once the card on display is gone
+            int next = position + 2;
+            if (next < state.getItemCount()) {
+                layoutPrefetchRegistry.addPosition(next, cardWidth - fraction);
+            }
+        } else {
+            int previous = position - (fraction > 0 ? 1 : 2);
+            if (previous >= 0) {
+                layoutPrefetchRegistry.addPosition(previous, fraction > 0 ? fraction : cardWidth);
+            }
+        }
+    }
+
+    @Override
+    public void scrollToPosition(int position) {
+        mPendingPosition = position;
+        requestLayout();
+    }
+
+    @Override
+    public void smoothScrollToPosition(RecyclerView recyclerView, RecyclerView.State state, int position) {
+        LinearSmoothScroller scroller = new CardDeckSmoothScroller(recyclerView.getContext());
+        scroller.setTargetPosition(position);
+        startSmoothScroll(scroller);
+    }
+
+    @Override
+    public PointF computeScrollVectorForPosition(int targetPosition) {
+        if (getChildCount() == 0) {
+            return null;
+        }
+        return new PointF(getDistanceToPosition(targetPosition) < 0 ? -1 : 1, 0);
+    }
+
+    /**
+     * Keeps the card on display in place when cards are added or removed before it
+     */
+    @Override
+    public void onItemsAdded(RecyclerView recyclerView, int positionStart, int itemCount) {
+        int position = getCurrentPosition();
+        if (getChildCount() > 0 && positionStart <= position) {
+            mPendingPosition = position + itemCount;
+        }
+    }
+
+    @Override
+    public void onItemsRemoved(RecyclerView recyclerView, int positionStart, int itemCount) {
+        int position = getCurrentPosition();
+        if (getChildCount() > 0 && positionStart <= position) {
+            // The card after the removed cards takes the place of a removed card on display
+            mPendingPosition = Math.max(positionStart, position - itemCount);
+        }
+    }
+
+    @Override
+    public void onItemsMoved(RecyclerView recyclerView, int from, int to, int itemCount) {
+        int position = getCurrentPosition();
+        if (getChildCount() == 0) {
+            return;
+        }
+        if (position >= from && position < from + itemCount) {
+            mPendingPosition = to + position - from;
+        } else if (from < position && to + itemCount > position) {
+            mPendingPosition = position - itemCount;
+        } else if (from > position && to <= position) {
+            mPendingPosition = position + itemCount;
+        }
+    }
+
+    @Override
+    public Parcelable onSaveInstanceState() {
+        Bundle state = new Bundle();
+        state.putInt(STATE_POSITION, getCurrentPosition());
+        return state;
+    }
+
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if (state instanceof Bundle) {
+            mPendingPosition = ((Bundle) state).getInt(STATE_POSITION, RecyclerView.NO_POSITION);
+            requestLayout();
+        }
+    }
+
+    /**
+     * Scrolls until the target card is the card on display. The default scroller would stop as soon as the target
+     * card shows, while it is still under the card on display.
+     */
+    class CardDeckSmoothScroller extends LinearSmoothScroller {
+
+        CardDeckSmoothScroller(Context context) {
+            super(context);
+        }
+
+        @Override
+        public int calculateDxToMakeVisible(View view, int snapPreference) {
+            return -getDistanceToPosition(getPosition(view));
+        }
+    }
+}
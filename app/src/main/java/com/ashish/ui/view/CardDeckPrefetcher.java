@@ -0,0 +1,118 @@
+package com.ashish.ui.view;
+
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.View;
+
+/**
+ * Binds upcoming cards in the idle time left at the end of frames. Every frame it works until the frame deadline
+ * (frame start time + frame interval), and only starts binding a card if the average bind time still fits in
+ * what is left of the frame. Cards that do not fit are bound in the following frames.
+ * <p>
+ * The average decays on every frame where no card fits, so a single slow bind (the 1st inflation, a GC pause) does
+ * not keep the prefetcher from binding again for long. A card is never bound in a frame it is not expected to fit in.
+ */
+class CardDeckPrefetcher implements Choreographer.FrameCallback, Runnable {
+
+    /**
+     * Does the actual prefetching, one card at a time
+     */
+    interface Callback {
+        /**
+         * @return true if there is a card that still needs to be prefetched
+         */
+        boolean hasPendingCard();
+
+        /**
+         * Binds the next card that needs to be prefetched
+         */
+        void prefetchCard();
+    }
+
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private final View mView;
+    private final Callback mCallback;
+    private boolean isScheduled;
+    private long mFrameDeadlineNanos;
+    // Moving average of the time it takes to bind a card
+    private long mAverageBindNanos;
+
+    CardDeckPrefetcher(View view, Callback callback) {
+        mView = view;
+        mCallback = callback;
+    }
+
+    /**
+     * Schedules prefetching for the next frame if it is not scheduled already
+     */
+    void schedule() {
+        if (isScheduled) {
+            return;
+        }
+        isScheduled = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void cancel() {
+        if (!isScheduled) {
+            return;
+        }
+        isScheduled = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        mView.removeCallbacks(this);
+    }
+
+    long getAverageBindNanos() {
+        return mAverageBindNanos;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameDeadlineNanos = frameTimeNanos + getFrameIntervalNanos(mView);
+        // Runs after the traversal of this frame, so only the time that is left in the frame is used
+        mView.post(this);
+    }
+
+    @Override
+    public void run() {
+        isScheduled = false;
+        boolean isBound = false;
+        while (mCallback.hasPendingCard()) {
+            long start = nanoTime();
+            if (start + mAverageBindNanos > mFrameDeadlineNanos) {
+                if (!isBound) {
+                    mAverageBindNanos -= mAverageBindNanos / 4;
+                }
+                schedule();
+                return;
+            }
+            isBound = true;
+            mCallback.prefetchCard();
+            long bindNanos = nanoTime() - start;
+            mAverageBindNanos = mAverageBindNanos == 0 ? bindNanos : (mAverageBindNanos * 3 + bindNanos) / 4;
+        }
+    }
+
+    /**
+     * Returns the current time in the time base of the frame times
+     */
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Returns the time between two frames on the display of the view
+     * @param view
+     */
+    static long getFrameIntervalNanos(View view) {
+        Display display = view.getDisplay();
+        if (display != null) {
+            float refreshRate = display.getRefreshRate();
+            if (refreshRate >= 30) {
+                return (long) (1000000000L / refreshRate);
+            }
+        }
+        return DEFAULT_FRAME_INTERVAL_NANOS;
+    }
+}
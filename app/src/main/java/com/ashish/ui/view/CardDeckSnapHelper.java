@@ -0,0 +1,59 @@
+package com.ashish.ui.view;
+
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SnapHelper;
+import android.view.View;
+
+/**
+ * Pages a RecyclerView laid out by {@link CardDeckLayoutManager} one card at a time, the way
+ * {@link CardDeckAdapterView} settles its swipes: a fling goes on to the next or previous card in its direction,
+ * a slower release completes the swipe if the card went at least half way and cancels it otherwise.
+ */
+public class CardDeckSnapHelper extends SnapHelper {
+
+    @Override
+    public int[] calculateDistanceToFinalSnap(RecyclerView.LayoutManager layoutManager, View targetView) {
+        int[] distance = new int[2];
+        if (layoutManager instanceof CardDeckLayoutManager) {
+            distance[0] = ((CardDeckLayoutManager) layoutManager).getDistanceToPosition(layoutManager.getPosition(targetView));
+        }
+        return distance;
+    }
+
+    /**
+     * Returns the card on display, or the card under it once the card on display slid out half way
+     */
+    @Override
+    public View findSnapView(RecyclerView.LayoutManager layoutManager) {
+        if (!(layoutManager instanceof CardDeckLayoutManager) || layoutManager.getChildCount() == 0) {
+            return null;
+        }
+        CardDeckLayoutManager deckLayoutManager = (CardDeckLayoutManager) layoutManager;
+        int position = deckLayoutManager.getCurrentPosition();
+        if (-deckLayoutManager.getDistanceToPosition(position) * 2 >= layoutManager.getWidth()
+                - layoutManager.getPaddingLeft() - layoutManager.getPaddingRight()) {
+            position++;
+        }
+        return layoutManager.findViewByPosition(position);
+    }
+
+    /**
+     * Flings forward go to the card after the card on display, flings back to the card on display if it slid out
+     * part of the way or else to the previous card
+     */
+    @Override
+    public int findTargetSnapPosition(RecyclerView.LayoutManager layoutManager, int velocityX, int velocityY) {
+        if (!(layoutManager instanceof CardDeckLayoutManager) || layoutManager.getItemCount() == 0) {
+            return RecyclerView.NO_POSITION;
+        }
+        CardDeckLayoutManager deckLayoutManager = (CardDeckLayoutManager) layoutManager;
+        int position = deckLayoutManager.getCurrentPosition();
+        int target;
+        if (velocityX > 0) {
+            target = position + 1;
+        } else {
+            target = deckLayoutManager.getDistanceToPosition(position) < 0 ? position : position - 1;
+        }
+        return Math.max(0, Math.min(target, layoutManager.getItemCount() - 1));
+    }
+}
@@ -0,0 +1,131 @@
+package com.ashish.ui.view;
+
+/**
+ * Counters of the work done by a {@link CardDeckAdapterView} to bind and recycle its cards, for the host app to
+ * log or display. They are only collected while enabled with {@link CardDeckAdapterView#setStatsEnabled(boolean)},
+ * so they cost nothing otherwise. The instance is owned by the view and updated in place.
+ */
+public class CardDeckStats {
+
+    int mBindCount;
+    int mInflationCount;
+    long mBindNanos;
+    int mRecycleHitCount;
+    int mRecycleMissCount;
+    // Binds of the swipe in progress and of the last swipe that ended
+    int mSwipeBindCount;
+    int mLastSwipeBindCount;
+    boolean isInSwipe;
+    // Indicates the prefetcher is still filling the window the last swipe moved
+    boolean isPrefetchingForSwipe;
+
+    /**
+     * @param bindNanos
+     * @param isInflated
+     * @param isPrefetched Indicates the card was bound by the prefetcher
+     */
+    void onBind(long bindNanos, boolean isInflated, boolean isPrefetched) {
+        mBindCount++;
+        mBindNanos += bindNanos;
+        if (isInflated) {
+            mInflationCount++;
+        }
+        if (isInSwipe) {
+            mSwipeBindCount++;
+        } else if (isPrefetched && isPrefetchingForSwipe) {
+            mLastSwipeBindCount++;
+        }
+    }
+
+    void onSwipeStart() {
+        if (!isInSwipe) {
+            isInSwipe = true;
+            isPrefetchingForSwipe = false;
+            mSwipeBindCount = 0;
+        }
+    }
+
+    /**
+     * @param hasPrefetch Indicates the prefetcher has cards of the window left to bind, they count towards the swipe
+     */
+    void onSwipeEnd(boolean hasPrefetch) {
+        if (isInSwipe) {
+            isInSwipe = false;
+            isPrefetchingForSwipe = hasPrefetch;
+            mLastSwipeBindCount = mSwipeBindCount;
+        }
+    }
+
+    /**
+     * Called once the prefetcher bound the whole window
+     */
+    void onPrefetchDone() {
+        isPrefetchingForSwipe = false;
+    }
+
+    void reset() {
+        mBindCount = 0;
+        mInflationCount = 0;
+        mBindNanos = 0;
+        mRecycleHitCount = 0;
+        mRecycleMissCount = 0;
+        mSwipeBindCount = 0;
+        mLastSwipeBindCount = 0;
+        isPrefetchingForSwipe = false;
+    }
+
+    /**
+     * Returns the number of cards bound through the adapter
+     */
+    public int getBindCount() {
+        return mBindCount;
+    }
+
+    /**
+     * Returns the number of binds where the adapter created a new view instead of re-using the one it was given
+     */
+    public int getInflationCount() {
+        return mInflationCount;
+    }
+
+    /**
+     * Returns the average time the adapter took to bind a card in nanoseconds
+     */
+    public long getAverageBindNanos() {
+        return mBindCount == 0 ? 0 : mBindNanos / mBindCount;
+    }
+
+    /**
+     * Returns the number of times a released view of the right type was handed to the adapter
+     */
+    public int getRecycleHitCount() {
+        return mRecycleHitCount;
+    }
+
+    /**
+     * Returns the number of times there was no released view of the right type for the adapter
+     */
+    public int getRecycleMissCount() {
+        return mRecycleMissCount;
+    }
+
+    /**
+     * Returns the number of cards bound for the last swipe, from the start of the drag until the cards settled
+     * and the window moved, plus the cards of the moved window the prefetcher binds afterwards. With prefetching
+     * the count keeps growing after the swipe ended, until the window is full again.
+     */
+    public int getLastSwipeBindCount() {
+        return mLastSwipeBindCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CardDeckStats{binds=" + mBindCount
+                + ", inflations=" + mInflationCount
+                + ", averageBindMs=" + getAverageBindNanos() / 1000000f
+                + ", recycleHits=" + mRecycleHitCount
+                + ", recycleMisses=" + mRecycleMissCount
+                + ", lastSwipeBinds=" + mLastSwipeBindCount
+                + "}";
+    }
+}
@@ -0,0 +1,246 @@
+package com.ashish.ui.view;
+
+import android.view.View;
+import android.widget.Adapter;
+
+import junit.framework.Assert;
+
+/**
+ * Keeps released views per adapter view type so that {@link Adapter#getView(int, View, android.view.ViewGroup)}
+ * is always given a convert view of the type it is asked to bind. Each view type has its own fixed size slot
+ * array, so releasing and re-using views does not allocate.
+ * <p>
+ * Every {@link CardDeckAdapterView} has its own pool by default. Decks shown together can share one with
+ * {@link CardDeckAdapterView#setRecycledViewPool(CardDeckViewPool)}, so a card released by one deck is re-bound by
+ * another instead of being inflated again. Their adapters must then use the same view types for the same views.
+ * A pool is confined to the thread that created it, the UI thread.
+ */
+public class CardDeckViewPool {
+
+    private final Thread mThread;
+    private View[][] mScrapViews;
+    private int[] mScrapCounts;
+    // Indicates the view types whose capacity was set with setCapacity
+    private boolean[] mHasCapacity;
+    private int mDefaultCapacity;
+    // Number of decks attached to a window that use the pool
+    private int mDeckCount;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * Creates a pool that keeps up to the given number of views per view type. Decks that use the pool raise the
+     * default capacity to what they need if it is lower.
+     * @param defaultCapacity
+     */
+    public CardDeckViewPool(int defaultCapacity) {
+        mThread = Thread.currentThread();
+        mDefaultCapacity = defaultCapacity;
+        setViewTypeCount(1);
+    }
+
+    /**
+     * Sets the number of views kept for a view type. Views over the new capacity are dropped.
+     * @param viewType View type as returned by {@link Adapter#getItemViewType(int)}
+     * @param capacity
+     */
+    public void setCapacity(int viewType, int capacity) {
+        checkThread();
+        Assert.assertTrue("viewType should be positive", viewType >= 0);
+        if (viewType >= mScrapViews.length) {
+            setViewTypeCount(viewType + 1);
+        }
+        mHasCapacity[viewType] = true;
+        resize(viewType, capacity);
+    }
+
+    public int getCapacity(int viewType) {
+        checkThread();
+        return viewType < mScrapViews.length ? mScrapViews[viewType].length : mDefaultCapacity;
+    }
+
+    /**
+     * Returns the number of views kept for the view type
+     * @param viewType
+     */
+    public int getScrapCount(int viewType) {
+        checkThread();
+        return viewType < mScrapCounts.length ? mScrapCounts[viewType] : 0;
+    }
+
+    /**
+     * Returns the number of times a kept view of the right type was handed to an adapter
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Returns the number of times there was no kept view of the right type for an adapter, or the adapter did not use
+     * the one it was given
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public void resetCounters() {
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+
+    /**
+     * Makes sure the pool has slots for the given number of view types. A pool never drops view types, the other
+     * decks sharing it may still use them.
+     * @param viewTypeCount
+     */
+    void setViewTypeCount(int viewTypeCount) {
+        if (viewTypeCount < 1) {
+            viewTypeCount = 1;
+        }
+        if (mScrapViews != null && mScrapViews.length >= viewTypeCount) {
+            return;
+        }
+        View[][] scrapViews = new View[viewTypeCount][];
+        int[] scrapCounts = new int[viewTypeCount];
+        boolean[] hasCapacity = new boolean[viewTypeCount];
+        for (int viewType = 0; viewType < viewTypeCount; viewType++) {
+            if (mScrapViews != null && viewType < mScrapViews.length) {
+                scrapViews[viewType] = mScrapViews[viewType];
+                scrapCounts[viewType] = mScrapCounts[viewType];
+                hasCapacity[viewType] = mHasCapacity[viewType];
+            } else {
+                scrapViews[viewType] = new View[mDefaultCapacity];
+            }
+        }
+        mScrapViews = scrapViews;
+        mScrapCounts = scrapCounts;
+        mHasCapacity = hasCapacity;
+    }
+
+    int getViewTypeCount() {
+        return mScrapViews.length;
+    }
+
+    /**
+     * Sets the number of views kept for the view types whose capacity was not set explicitly
+     * @param capacity
+     */
+    void setDefaultCapacity(int capacity) {
+        for (int viewType = 0; viewType < mScrapViews.length; viewType++) {
+            if (!mHasCapacity[viewType]) {
+                resize(viewType, capacity);
+            }
+        }
+        mDefaultCapacity = capacity;
+    }
+
+    /**
+     * Raises the default capacity to the given capacity if it is lower
+     * @param capacity
+     */
+    void ensureDefaultCapacity(int capacity) {
+        if (capacity > mDefaultCapacity) {
+            setDefaultCapacity(capacity);
+        }
+    }
+
+    private void resize(int viewType, int capacity) {
+        // Views over the new capacity leave the deck that released them like any other dropped view
+        while (mScrapCounts[viewType] > capacity) {
+            CardDeckAdapterView.dropReleasedView(drain(viewType));
+        }
+        View[] views = new View[capacity];
+        int count = Math.min(mScrapCounts[viewType], capacity);
+        System.arraycopy(mScrapViews[viewType], 0, views, 0, count);
+        mScrapViews[viewType] = views;
+        mScrapCounts[viewType] = count;
+    }
+
+    void addDeck() {
+        mDeckCount++;
+    }
+
+    void removeDeck() {
+        mDeckCount--;
+    }
+
+    int getDeckCount() {
+        return mDeckCount;
+    }
+
+    /**
+     * Returns a released view for the view type or null if there is none
+     * @param viewType
+     */
+    View get(int viewType) {
+        checkThread();
+        if (!isRecyclable(viewType) || mScrapCounts[viewType] == 0) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        int index = --mScrapCounts[viewType];
+        View view = mScrapViews[viewType][index];
+        mScrapViews[viewType][index] = null;
+        return view;
+    }
+
+    /**
+     * Keeps the view to be re-used for the view type
+     * @param viewType
+     * @param view
+     * @return false if the view could not be kept because its view type is full or not recyclable
+     */
+    boolean put(int viewType, View view) {
+        checkThread();
+        if (!isRecyclable(viewType) || mScrapCounts[viewType] == mScrapViews[viewType].length) {
+            return false;
+        }
+        mScrapViews[viewType][mScrapCounts[viewType]++] = view;
+        return true;
+    }
+
+    /**
+     * Returns a view taken with {@link #get(int)} that the adapter did not use. It does not count as a hit.
+     * @param viewType
+     * @param view
+     */
+    boolean putBack(int viewType, View view) {
+        mHitCount--;
+        mMissCount++;
+        return put(viewType, view);
+    }
+
+    /**
+     * Removes and returns a kept view for the view type without counting it as a hit, or null if there is none
+     * @param viewType
+     */
+    View drain(int viewType) {
+        checkThread();
+        if (mScrapCounts[viewType] == 0) {
+            return null;
+        }
+        int index = --mScrapCounts[viewType];
+        View view = mScrapViews[viewType][index];
+        mScrapViews[viewType][index] = null;
+        return view;
+    }
+
+    /**
+     * Returns a kept view without removing it
+     * @param viewType
+     * @param index Index of the view, less than {@link #getScrapCount(int)}
+     */
+    View getScrapView(int viewType, int index) {
+        return mScrapViews[viewType][index];
+    }
+
+    private boolean isRecyclable(int viewType) {
+        return viewType >= 0 && viewType < mScrapViews.length;
+    }
+
+    private void checkThread() {
+        Assert.assertTrue("CardDeckViewPool should only be used from the thread that created it", Thread.currentThread() == mThread);
+    }
+}
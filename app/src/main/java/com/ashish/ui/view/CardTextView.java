@@ -0,0 +1,92 @@
+package com.ashish.ui.view;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+/**
+ * Draws a text layout that was built ahead of time, centered in the view. Unlike a TextView, setting its text does
+ * not measure the text nor request a layout, so cards can be bound with layouts prepared off the UI thread.
+ * It reads the android:textSize and android:textColor attributes; layouts built elsewhere should use the paint of
+ * {@link #getPaint()}.
+ */
+public class CardTextView extends View {
+
+    private static final int[] ATTRS = {android.R.attr.textSize, android.R.attr.textColor};
+    private static final float DEFAULT_TEXT_SIZE_SP = 14f;
+
+    private final TextPaint mPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private Layout mLayout;
+
+    public CardTextView(Context context) {
+        this(context, null);
+    }
+
+    public CardTextView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public CardTextView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        TypedArray a = context.obtainStyledAttributes(attrs, ATTRS, defStyle, 0);
+        float defaultTextSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, DEFAULT_TEXT_SIZE_SP,
+                getResources().getDisplayMetrics());
+        mPaint.setTextSize(a.getDimension(0, defaultTextSize));
+        mPaint.setColor(a.getColor(1, Color.BLACK));
+        a.recycle();
+        mPaint.density = getResources().getDisplayMetrics().density;
+    }
+
+    public TextPaint getPaint() {
+        return mPaint;
+    }
+
+    /**
+     * Shows the text of the layout. The layout should be as wide as the view without its padding.
+     * @param layout
+     */
+    public void setTextLayout(Layout layout) {
+        mLayout = layout;
+        setContentDescription(layout == null ? null : layout.getText());
+        invalidate();
+    }
+
+    public Layout getTextLayout() {
+        return mLayout;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        int width = w - getPaddingLeft() - getPaddingRight();
+        if (mLayout != null && mLayout.getWidth() != width) {
+            // Only happens if the view is resized after it was bound
+            mLayout = new StaticLayout(mLayout.getText(), mPaint, Math.max(0, width), Layout.Alignment.ALIGN_CENTER,
+                    1.0f, 0.0f, true);
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mLayout == null) {
+            return;
+        }
+        int contentWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        int contentHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+        canvas.save();
+        canvas.clipRect(getPaddingLeft(), getPaddingTop(), getWidth() - getPaddingRight(), getHeight() - getPaddingBottom());
+        canvas.translate(getPaddingLeft() + (contentWidth - mLayout.getWidth()) / 2,
+                getPaddingTop() + Math.max(0, (contentHeight - mLayout.getHeight()) / 2));
+        mLayout.draw(canvas);
+        canvas.restore();
+    }
+}
@@ -0,0 +1,88 @@
+package com.ashish.ui.view;
+
+/**
+ * Frame timings of one swipe, from the moment the cards start following the touch until they settle.
+ * The same instance is re-used for every swipe, so its values are only valid during
+ * {@link CardDeckAdapterView.OnSwipeMetricsListener#onSwipeMetrics(SwipeFrameMetrics)}.
+ */
+public class SwipeFrameMetrics {
+
+    int mFrameCount;
+    int mDroppedFrameCount;
+    long mWorstFrameNanos;
+    long mFrameIntervalNanos;
+    long mDurationNanos;
+    long mReleaseToSettleNanos;
+    int mCulledDrawCount;
+
+    void reset() {
+        mFrameCount = 0;
+        mDroppedFrameCount = 0;
+        mWorstFrameNanos = 0;
+        mFrameIntervalNanos = 0;
+        mDurationNanos = 0;
+        mReleaseToSettleNanos = -1;
+        mCulledDrawCount = 0;
+    }
+
+    /**
+     * Returns the number of frames drawn during the swipe
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Returns the number of frames that were missed, i.e. the vsyncs at which no new frame was started
+     */
+    public int getDroppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    /**
+     * Returns the longest time between two consecutive frames of the swipe in nanoseconds
+     */
+    public long getWorstFrameNanos() {
+        return mWorstFrameNanos;
+    }
+
+    /**
+     * Returns the time between two frames of the display in nanoseconds
+     */
+    public long getFrameIntervalNanos() {
+        return mFrameIntervalNanos;
+    }
+
+    /**
+     * Returns the time from the start of the swipe until the cards settled in nanoseconds
+     */
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    /**
+     * Returns the time from the touch being released (ACTION_UP) until the cards settled in nanoseconds,
+     * or -1 if the swipe ended without a release
+     */
+    public long getReleaseToSettleNanos() {
+        return mReleaseToSettleNanos;
+    }
+
+    /**
+     * Returns the number of card draws skipped during the swipe because the card was offscreen or covered
+     */
+    public int getCulledDrawCount() {
+        return mCulledDrawCount;
+    }
+
+    @Override
+    public String toString() {
+        return "SwipeFrameMetrics{frames=" + mFrameCount
+                + ", dropped=" + mDroppedFrameCount
+                + ", worstFrameMs=" + mWorstFrameNanos / 1000000f
+                + ", durationMs=" + mDurationNanos / 1000000f
+                + ", releaseToSettleMs=" + (mReleaseToSettleNanos < 0 ? -1 : mReleaseToSettleNanos / 1000000f)
+                + ", culledDraws=" + mCulledDrawCount
+                + "}";
+    }
+}
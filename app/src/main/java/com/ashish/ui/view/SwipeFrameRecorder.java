@@ -0,0 +1,102 @@
+package com.ashish.ui.view;
+
+import android.view.Choreographer;
+import android.view.View;
+
+/**
+ * Records the frame timings of a swipe with Choreographer frame callbacks. It only exists while a
+ * {@link CardDeckAdapterView.OnSwipeMetricsListener} is attached, so swipes are not timed otherwise.
+ */
+class SwipeFrameRecorder implements Choreographer.FrameCallback {
+
+    private final View mView;
+    private final CardDeckAdapterView.OnSwipeMetricsListener mListener;
+    private final SwipeFrameMetrics mMetrics = new SwipeFrameMetrics();
+    private boolean isRecording;
+    private long mStartNanos;
+    private long mLastFrameTimeNanos;
+    private long mReleaseNanos;
+
+    SwipeFrameRecorder(View view, CardDeckAdapterView.OnSwipeMetricsListener listener) {
+        mView = view;
+        mListener = listener;
+    }
+
+    /**
+     * Starts recording a swipe, unless one is being recorded already
+     */
+    void start() {
+        if (isRecording) {
+            return;
+        }
+        isRecording = true;
+        mMetrics.reset();
+        mMetrics.mFrameIntervalNanos = CardDeckPrefetcher.getFrameIntervalNanos(mView);
+        mStartNanos = System.nanoTime();
+        mLastFrameTimeNanos = -1;
+        mReleaseNanos = -1;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Marks the moment the touch was released
+     */
+    void release() {
+        if (isRecording) {
+            mReleaseNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Counts a card draw skipped by overdraw culling
+     */
+    void onCulledDraw() {
+        if (isRecording) {
+            mMetrics.mCulledDrawCount++;
+        }
+    }
+
+    /**
+     * Ends the swipe once the cards settled and reports it to the listener
+     */
+    void finish() {
+        if (!isRecording) {
+            return;
+        }
+        isRecording = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        long now = System.nanoTime();
+        mMetrics.mDurationNanos = now - mStartNanos;
+        mMetrics.mReleaseToSettleNanos = mReleaseNanos < 0 ? -1 : now - mReleaseNanos;
+        mListener.onSwipeMetrics(mMetrics);
+    }
+
+    /**
+     * Stops recording without reporting
+     */
+    void cancel() {
+        isRecording = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!isRecording) {
+            return;
+        }
+        if (mLastFrameTimeNanos >= 0) {
+            long frameNanos = frameTimeNanos - mLastFrameTimeNanos;
+            if (frameNanos > mMetrics.mWorstFrameNanos) {
+                mMetrics.mWorstFrameNanos = frameNanos;
+            }
+            // Frames are started on vsync, so every extra interval between two frames is a missed frame
+            long missed = (frameNanos + mMetrics.mFrameIntervalNanos / 2) / mMetrics.mFrameIntervalNanos - 1;
+            if (missed > 0) {
+                mMetrics.mDroppedFrameCount += missed;
+            }
+        }
+        mMetrics.mFrameCount++;
+        mLastFrameTimeNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
@@ -0,0 +1,877 @@
+package com.ashish.ui.view;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.accessibility.AccessibilityManager;
+import android.widget.BaseAdapter;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+
+import com.ashish.ui.image.CardImageLoader;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowAccessibilityManager;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowSystemClock;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Performance budgets of {@link CardDeckAdapterView}, checked on the JVM with synthetic touch streams. Every test
+ * warms the deck up with a few swipes first, then measures one more gesture and fails if it binds, inflates, lays out
+ * or allocates more than the budget. A budget that fails is a regression of the card deck, not of the test.
+ * <p>
+ * Prefetching is disabled so that the cards are bound as soon as the window moves and the counts are exact, except
+ * in the tests that check the budgets with prefetching.
+ * Robolectric runs frame callbacks right away, so a whole gesture and its animation run within the dispatch calls.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23, shadows = CardDeckAdapterViewPerfTest.SingleAccessibilityManager.class)
+public class CardDeckAdapterViewPerfTest {
+
+    /**
+     * The accessibility manager of Robolectric is created again every time a view checks whether accessibility is
+     * enabled, which happens on every property change of a card. Sharing one instance keeps it out of the measured
+     * allocations.
+     */
+    @Implements(AccessibilityManager.class)
+    public static class SingleAccessibilityManager extends ShadowAccessibilityManager {
+        private static AccessibilityManager sInstance;
+
+        @Implementation
+        public static AccessibilityManager getInstance(Context context) throws Exception {
+            if (sInstance == null) {
+                sInstance = ShadowAccessibilityManager.getInstance(context);
+            }
+            return sInstance;
+        }
+    }
+
+    private static final int DECK_WIDTH = 480;
+    private static final int DECK_HEIGHT = 800;
+    private static final int CARD_COUNT = 1000;
+    private static final int WARM_UP_SWIPES = 4;
+    // Time between two touch samples, a bit faster than the display like most touch screens
+    private static final long TOUCH_INTERVAL = 8;
+    // Longer than the time window of the velocity tracker
+    private static final long HOLD_TIME = 300;
+
+    // A swipe moves the window by one card, so one card enters the window
+    private static final int MAX_BINDS_PER_SWIPE = 1;
+    // Moving a card in and out of the window re-uses the released views once the deck is warm
+    private static final int MAX_INFLATIONS_PER_SWIPE = 0;
+    // Only the card that is bound is laid out, the deck itself is never laid out again by a swipe
+    private static final int MAX_CARD_LAYOUTS_PER_SWIPE = 1;
+    private static final int MAX_DECK_LAYOUTS_PER_SWIPE = 0;
+    // The riffle of a long fling binds the target card, its neighbours and a few cards in between
+    private static final int MAX_BINDS_PER_FLING = CardDeckAdapterView.RIFFLE_CARD_COUNT + 3;
+    // Most of what a swipe allocates is the message scheduling of Robolectric (~170KB for a swipe and its animation),
+    // so a swipe is measured against a gesture that settles back over the same distance. The deck itself should not
+    // allocate once it is warm, what is left is the proxies Robolectric creates when the cards that move in and out
+    // of the window are invalidated and detached.
+    private static final long MAX_ALLOCATED_BYTES_PER_SWIPE = 1024;
+    // Each gesture is measured a few times and the least is kept, the message queues of Robolectric grow now and then
+    private static final int ALLOCATION_RUNS = 3;
+    // Lead of the frame clock over System.nanoTime(), see alignFrameClock()
+    private static final long FRAME_CLOCK_LEAD_NANOS = 10000000000L;
+
+    private CountingAdapter mAdapter;
+    private CountingDeck mDeck;
+    private FrameLayout mRoot;
+    private long mEventTime;
+
+    @Before
+    public void setUp() {
+        SingleAccessibilityManager.sInstance = null;
+        CardDeckAdapterView.clearWarmViews();
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        mDeck = new CountingDeck(activity);
+        mDeck.setPrefetchEnabled(false);
+        mRoot = new FrameLayout(activity);
+        mRoot.addView(mDeck, new FrameLayout.LayoutParams(DECK_WIDTH, DECK_HEIGHT));
+        activity.setContentView(mRoot);
+        mAdapter = new CountingAdapter(CARD_COUNT);
+        mDeck.setAdapter(mAdapter);
+        layout();
+        mEventTime = SystemClock.uptimeMillis();
+        alignFrameClock();
+    }
+
+    @After
+    public void tearDown() {
+        CardDeckAdapterView.clearWarmViews();
+    }
+
+    @Test
+    public void swipeToNextCardStaysWithinBudget() {
+        warmUp();
+        resetCounters();
+        int position = mDeck.getSelectedItemPosition();
+        drag(DECK_WIDTH * 0.9f, DECK_WIDTH * 0.1f, 12);
+
+        assertEquals(position + 1, mDeck.getSelectedItemPosition());
+        assertSwipeBudgets();
+    }
+
+    @Test
+    public void swipeToPreviousCardStaysWithinBudget() {
+        warmUp();
+        resetCounters();
+        int position = mDeck.getSelectedItemPosition();
+        drag(DECK_WIDTH * 0.1f, DECK_WIDTH * 0.9f, 12);
+
+        assertEquals(position - 1, mDeck.getSelectedItemPosition());
+        assertSwipeBudgets();
+    }
+
+    @Test
+    public void swipeWithPrefetchStaysWithinBudget() {
+        mDeck.setPrefetchEnabled(true);
+        warmUp();
+        resetCounters();
+        int position = mDeck.getSelectedItemPosition();
+        drag(DECK_WIDTH * 0.9f, DECK_WIDTH * 0.1f, 12);
+
+        // The prefetcher has bound the card that entered the window by the time the cards settled
+        assertEquals(position + 1, mDeck.getSelectedItemPosition());
+        assertEquals(mDeck.getLookBehind() + 1 + mDeck.getLookAhead(), mDeck.getChildCount());
+        assertSwipeBudgets();
+    }
+
+    @Test
+    public void reversedDragDoesNotBind() {
+        warmUp();
+        resetCounters();
+        int position = mDeck.getSelectedItemPosition();
+        // Goes more than half way to the next card, comes back past the start and is released there
+        MotionEvent[] events = new MotionEvent[27];
+        int count = 0;
+        long downTime = nextEventTime();
+        events[count++] = obtain(downTime, downTime, MotionEvent.ACTION_DOWN, DECK_WIDTH * 0.8f);
+        for (int i = 1; i <= 12; i++) {
+            events[count++] = obtain(downTime, nextEventTime(), MotionEvent.ACTION_MOVE, DECK_WIDTH * (0.8f - 0.05f * i));
+        }
+        for (int i = 1; i <= 12; i++) {
+            events[count++] = obtain(downTime, nextEventTime(), MotionEvent.ACTION_MOVE, DECK_WIDTH * (0.2f + 0.05f * i));
+        }
+        // Held still before the release so that it does not fling
+        mEventTime += HOLD_TIME;
+        events[count++] = obtain(downTime, mEventTime, MotionEvent.ACTION_MOVE, DECK_WIDTH * 0.8f);
+        events[count++] = obtain(downTime, nextEventTime(), MotionEvent.ACTION_UP, DECK_WIDTH * 0.8f);
+        dispatch(events, count);
+
+        assertEquals(position, mDeck.getSelectedItemPosition());
+        assertEquals("getView calls", 0, mAdapter.mGetViewCount);
+        assertEquals("inflations", 0, mAdapter.mInflationCount);
+        assertEquals("deck layouts", 0, mDeck.mLayoutCount);
+    }
+
+    @Test
+    public void longFlingBindsAFixedNumberOfCards() {
+        warmUp();
+        // The riffle shows more cards than the window holds, the 1st one inflates the views it needs
+        fling(DECK_WIDTH * 0.9f, DECK_WIDTH * 0.1f);
+        resetCounters();
+        int position = mDeck.getSelectedItemPosition();
+        fling(DECK_WIDTH * 0.9f, DECK_WIDTH * 0.1f);
+
+        assertTrue("fling should move more than one card", mDeck.getSelectedItemPosition() > position + 1);
+        assertTrue("getView calls: " + mAdapter.mGetViewCount, mAdapter.mGetViewCount <= MAX_BINDS_PER_FLING);
+        assertEquals("inflations", 0, mAdapter.mInflationCount);
+        assertEquals("deck layouts", 0, mDeck.mLayoutCount);
+    }
+
+    @Test
+    public void dataSetChangeWithStableIdsDoesNotInflate() {
+        warmUp();
+        resetCounters();
+        int position = mDeck.getSelectedItemPosition();
+        mAdapter.notifyDataSetChanged();
+        layout();
+
+        assertEquals(position, mDeck.getSelectedItemPosition());
+        assertTrue("getView calls: " + mAdapter.mGetViewCount, mAdapter.mGetViewCount <= mDeck.getLookBehind() + 1 + mDeck.getLookAhead());
+        assertEquals("inflations", 0, mAdapter.mInflationCount);
+    }
+
+    @Test
+    public void lostItemIdIsOnlySearchedNearTheCardOnDisplay() {
+        warmUp();
+        int position = mDeck.getSelectedItemPosition();
+        resetCounters();
+        mAdapter.replaceAllIds();
+        layout();
+
+        assertEquals(position, mDeck.getSelectedItemPosition());
+        // Both sides of the expected position are searched, then the window is bound again
+        int windowSize = mDeck.getLookBehind() + 1 + mDeck.getLookAhead();
+        assertTrue("getItemId calls: " + mAdapter.mGetItemIdCount,
+                mAdapter.mGetItemIdCount <= 2 * (CardDeckAdapterView.MAX_ITEM_SEARCH_DISTANCE + 1) + 2 * windowSize);
+    }
+
+    @Test
+    public void insertedCardsAreBoundOnce() {
+        warmUp();
+        resetCounters();
+        mAdapter.insert(mDeck.getSelectedItemPosition() + 1);
+        layout();
+        resetCounters();
+        int position = mDeck.getSelectedItemPosition();
+        drag(DECK_WIDTH * 0.9f, DECK_WIDTH * 0.1f, 12);
+
+        assertEquals(position + 1, mDeck.getSelectedItemPosition());
+        assertSwipeBudgets();
+    }
+
+    @Test
+    public void insertedCardWithDiffBindsOnlyThatCard() {
+        warmUp();
+        resetCounters();
+        int position = mDeck.getSelectedItemPosition();
+        mAdapter.insertWithDiff(position + 1);
+        layout();
+
+        assertEquals(position, mDeck.getSelectedItemPosition());
+        assertEquals("getView calls", 1, mAdapter.mGetViewCount);
+        assertEquals("inflations", 0, mAdapter.mInflationCount);
+    }
+
+    @Test
+    public void insertedCardWithDiffIsLeftToThePrefetcher() {
+        mDeck.setPrefetchEnabled(true);
+        mDeck.setWindowSize(1, 3);
+        warmUp();
+        resetCounters();
+        int position = mDeck.getSelectedItemPosition();
+        mAdapter.mPrefetchStart = -1;
+        // Holds the frames of the prefetcher
+        ShadowLooper.pauseMainLooper();
+        mAdapter.insertWithDiff(position + 2);
+        layout();
+
+        // The cards before the inserted card are kept, the inserted card and the ones after it are left pending
+        assertEquals(position, mDeck.getSelectedItemPosition());
+        assertEquals("getView calls", 0, mAdapter.mGetViewCount);
+        assertEquals(3, mDeck.getChildCount());
+        assertEquals(position - 1, mAdapter.mPrefetchStart);
+
+        // The prefetcher binds the inserted card and the card that moved after it
+        ShadowLooper.unPauseMainLooper();
+        assertEquals(1 + 1 + 3, mDeck.getChildCount());
+        assertEquals("getView calls", 2, mAdapter.mGetViewCount);
+        assertEquals("inflations", 0, mAdapter.mInflationCount);
+    }
+
+    @Test
+    public void cardInsertedOutsideTheWindowWithDiffDoesNotBind() {
+        warmUp();
+        resetCounters();
+        int position = mDeck.getSelectedItemPosition();
+        mAdapter.insertWithDiff(position + mDeck.getLookAhead() + 2);
+        layout();
+
+        assertEquals(position, mDeck.getSelectedItemPosition());
+        assertEquals("getView calls", 0, mAdapter.mGetViewCount);
+    }
+
+    @Test
+    public void prefetchAdapterIsToldAboutTheWindow() {
+        warmUp();
+        drag(DECK_WIDTH * 0.9f, DECK_WIDTH * 0.1f, 12);
+        int position = mDeck.getSelectedItemPosition();
+
+        assertEquals(Math.max(0, position - mDeck.getLookBehind()), mAdapter.mPrefetchStart);
+        assertEquals(position + mDeck.getLookAhead(), mAdapter.mPrefetchEnd);
+        assertEquals(DECK_WIDTH, mAdapter.mPrefetchCardWidth);
+    }
+
+    @Test
+    public void trimmedWindowKeepsTheCardsOnDisplayAndGrowsBackOnTouch() {
+        mDeck.setWindowSize(2, 3);
+        warmUp();
+        resetCounters();
+        int position = mDeck.getSelectedItemPosition();
+        mDeck.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertEquals(1, mDeck.getLookBehind());
+        assertEquals(1, mDeck.getLookAhead());
+        assertEquals(3, mDeck.getChildCount());
+        assertEquals(0, mDeck.getRecycledViewPool().getScrapCount(0));
+        assertEquals(position, mDeck.getSelectedItemPosition());
+        assertEquals("getView calls", 0, mAdapter.mGetViewCount);
+
+        drag(DECK_WIDTH * 0.9f, DECK_WIDTH * 0.1f, 12);
+        assertEquals(2, mDeck.getLookBehind());
+        assertEquals(3, mDeck.getLookAhead());
+        assertEquals(position + 1, mDeck.getSelectedItemPosition());
+    }
+
+    @Test
+    public void trimmedMemoryFreesTheImagesOfTheDroppedCards() throws Exception {
+        CardImageLoader imageLoader = new CardImageLoader(mDeck.getContext(), 64 * 1024 * 1024, 1024 * 1024);
+        mAdapter = new CountingAdapter(CARD_COUNT);
+        mAdapter.mImageLoader = imageLoader;
+        mDeck.setAdapter(mAdapter);
+        mDeck.setWindowSize(2, 3);
+        warmUp();
+        loadImages();
+        long retainedByteCount = imageLoader.getRetainedByteCount();
+        mDeck.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        // Only the images of the cards that stay bound are left, they are still displayed
+        long displayedByteCount = 0;
+        for (int i = 0; i < mDeck.getChildCount(); i++) {
+            ImageView card = (ImageView) mDeck.getChildAt(i);
+            displayedByteCount += ((BitmapDrawable) card.getDrawable()).getBitmap().getByteCount();
+        }
+        assertEquals(3, mDeck.getChildCount());
+        assertTrue(retainedByteCount > displayedByteCount);
+        assertEquals(displayedByteCount, imageLoader.getRetainedByteCount());
+        imageLoader.shutdown();
+    }
+
+    @Test
+    public void prefetchedCardsCountTowardsTheSwipe() {
+        mDeck.setPrefetchEnabled(true);
+        mDeck.setStatsEnabled(true);
+        warmUp();
+        int position = mDeck.getSelectedItemPosition();
+        drag(DECK_WIDTH * 0.9f, DECK_WIDTH * 0.1f, 12);
+
+        // Robolectric runs the prefetcher right away, the card entering the window is bound once the cards settled
+        assertEquals(position + 1, mDeck.getSelectedItemPosition());
+        assertEquals(mDeck.getLookBehind() + 1 + mDeck.getLookAhead(), mDeck.getChildCount());
+        assertEquals("swipe binds", MAX_BINDS_PER_SWIPE, mDeck.getStats().getLastSwipeBindCount());
+    }
+
+    @Test
+    public void backgroundInflationCountsTheViewsAlreadyKept() {
+        warmUp();
+        CardDeckViewPool pool = mDeck.getRecycledViewPool();
+        pool.setCapacity(0, 8);
+        int kept = pool.getScrapCount(0);
+        mDeck.inflateInBackground(android.R.layout.simple_list_item_1, 0, kept + 2);
+        idleInflaterThread();
+        assertEquals(kept + 2, pool.getScrapCount(0));
+
+        // Fewer views than the pool already keeps
+        mDeck.inflateInBackground(android.R.layout.simple_list_item_1, 0, kept + 1);
+        idleInflaterThread();
+        assertEquals(kept + 2, pool.getScrapCount(0));
+    }
+
+    @Test
+    public void shrunkPoolRemovesTheViewsItDropsFromTheDeck() {
+        mDeck.setWindowSize(2, 3);
+        warmUp();
+        // The smaller window re-binds 3 of the cards it releases, the others stay in the pool
+        mDeck.setWindowSize(1, 1);
+        CardDeckViewPool pool = mDeck.getRecycledViewPool();
+        int scrapCount = pool.getScrapCount(0);
+        pool.setCapacity(0, scrapCount);
+        View[] views = new View[scrapCount];
+        for (int i = 0; i < scrapCount; i++) {
+            views[i] = pool.getScrapView(0, i);
+        }
+        assertTrue(scrapCount > 1);
+
+        pool.setCapacity(0, 1);
+        assertEquals(1, pool.getScrapCount(0));
+        assertTrue(views[0].isAttachedToWindow());
+        for (int i = 1; i < scrapCount; i++) {
+            assertFalse(views[i].isAttachedToWindow());
+            assertNull(((CardDeckAdapterView.LayoutParams) views[i].getLayoutParams()).deck);
+        }
+    }
+
+    /**
+     * Runs what was posted to the inflater thread, whose Robolectric scheduler does not follow the clock of the UI
+     * thread, then hands the inflated views over to the UI thread
+     */
+    private static void idleInflaterThread() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("CardDeckInflater".equals(thread.getName())) {
+                Shadows.shadowOf(ShadowLooper.getLooperForThread(thread)).runToEndOfTasks();
+            }
+        }
+        ShadowLooper.idleMainLooper();
+    }
+
+    @Test
+    public void deckSharingAPoolReusesViewsReleasedByAnotherDeck() {
+        warmUp();
+        CountingDeck otherDeck = new CountingDeck(mDeck.getContext());
+        otherDeck.setPrefetchEnabled(false);
+        otherDeck.setRecycledViewPool(mDeck.getRecycledViewPool());
+        // Only decks in the window share the pool
+        mRoot.addView(otherDeck, new FrameLayout.LayoutParams(DECK_WIDTH, DECK_HEIGHT));
+        // The 1st deck empties and releases its cards, the other deck shows another data set with them
+        mDeck.setAdapter(new CountingAdapter(0));
+        CountingAdapter otherAdapter = new CountingAdapter(CARD_COUNT);
+        otherDeck.setAdapter(otherAdapter);
+        mDeck = otherDeck;
+        mAdapter = otherAdapter;
+        layout();
+
+        assertEquals("inflations", 0, otherAdapter.mInflationCount);
+        resetCounters();
+        drag(DECK_WIDTH * 0.9f, DECK_WIDTH * 0.1f, 12);
+        assertEquals(1, mDeck.getSelectedItemPosition());
+        assertSwipeBudgets();
+    }
+
+    @Test
+    public void detachedDeckStopsSharingItsPool() {
+        CountingDeck otherDeck = new CountingDeck(mDeck.getContext());
+        otherDeck.setRecycledViewPool(mDeck.getRecycledViewPool());
+        mRoot.addView(otherDeck, new FrameLayout.LayoutParams(DECK_WIDTH, DECK_HEIGHT));
+        CardDeckViewPool pool = mDeck.getRecycledViewPool();
+        mDeck.setWindowSize(2, 3);
+        int capacity = pool.getCapacity(0);
+
+        // The other deck may still need the views of the bigger window
+        mDeck.setWindowSize(1, 1);
+        assertEquals(capacity, pool.getCapacity(0));
+
+        mRoot.removeView(otherDeck);
+        mDeck.setWindowSize(2, 3);
+        mDeck.setWindowSize(1, 1);
+        // Alone, the deck shrinks the pool by the cards its window lost
+        assertEquals(capacity - 3, pool.getCapacity(0));
+
+        mRoot.addView(otherDeck, new FrameLayout.LayoutParams(DECK_WIDTH, DECK_HEIGHT));
+        mDeck.setWindowSize(2, 3);
+        mDeck.setWindowSize(1, 1);
+        assertEquals(capacity, pool.getCapacity(0));
+    }
+
+    @Test
+    public void cardsUnderACardWithOpaqueContentAreCulled() {
+        // Cards like card_deck_item, whose background is on a child filling the card
+        mAdapter = new CountingAdapter(CARD_COUNT);
+        mAdapter.isOpaqueContent = true;
+        mDeck.setAdapter(mAdapter);
+        layout();
+        warmUp();
+        mDeck.resetCulledDrawCount();
+        draw();
+
+        // Only the card on display shows at rest
+        assertEquals("culled draws", mDeck.getChildCount() - 1, mDeck.getCulledDrawCount());
+    }
+
+    @Test
+    public void swipeAllocationsStayWithinBudget() {
+        assertSwipeAllocations();
+    }
+
+    @Test
+    public void swipeWithPrefetchAllocationsStayWithinBudget() {
+        mDeck.setPrefetchEnabled(true);
+        assertSwipeAllocations();
+    }
+
+    /**
+     * Checks what a swipe to the next card allocates over a gesture that is released before half way, so that it
+     * moves the cards as much and settles back over the same distance without moving the window. With prefetching
+     * the baseline also has the frame and post the prefetcher waits for before it binds.
+     */
+    private void assertSwipeAllocations() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+        warmUp();
+        long baseline = Long.MAX_VALUE;
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < ALLOCATION_RUNS; i++) {
+            int position = mDeck.getSelectedItemPosition();
+            long settleBack = measureDrag(allocationBean, DECK_WIDTH * 0.8f, DECK_WIDTH * 0.35f);
+            assertEquals(position, mDeck.getSelectedItemPosition());
+            if (mDeck.isPrefetchEnabled()) {
+                settleBack += measureFrameAndPost(allocationBean);
+            }
+            baseline = Math.min(baseline, settleBack);
+            allocated = Math.min(allocated, measureDrag(allocationBean, DECK_WIDTH * 0.8f, DECK_WIDTH * 0.25f));
+            assertEquals(position + 1, mDeck.getSelectedItemPosition());
+        }
+
+        assertTrue("allocated bytes over the baseline: " + (allocated - baseline),
+                allocated - baseline <= MAX_ALLOCATED_BYTES_PER_SWIPE);
+    }
+
+    /**
+     * Returns the bytes allocated by a drag and the settling of the cards
+     */
+    private long measureDrag(com.sun.management.ThreadMXBean allocationBean, float fromX, float toX) {
+        // The events are obtained before measuring, only the handling of the gesture is measured
+        MotionEvent[] events = new MotionEvent[15];
+        int count = obtainDrag(events, fromX, toX, 12, HOLD_TIME);
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        dispatch(events, count);
+        return allocationBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    /**
+     * Returns the bytes Robolectric allocates to run a frame callback that posts to the deck
+     */
+    private long measureFrameAndPost(com.sun.management.ThreadMXBean allocationBean) {
+        final Runnable post = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                mDeck.post(post);
+            }
+        };
+        Choreographer choreographer = Choreographer.getInstance();
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        choreographer.postFrameCallback(frameCallback);
+        ShadowLooper.idleMainLooper();
+        return allocationBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private void assertSwipeBudgets() {
+        assertTrue("getView calls: " + mAdapter.mGetViewCount, mAdapter.mGetViewCount <= MAX_BINDS_PER_SWIPE);
+        assertTrue("inflations: " + mAdapter.mInflationCount, mAdapter.mInflationCount <= MAX_INFLATIONS_PER_SWIPE);
+        assertTrue("card layouts: " + mAdapter.mCardLayoutCount, mAdapter.mCardLayoutCount <= MAX_CARD_LAYOUTS_PER_SWIPE);
+        assertTrue("deck layouts: " + mDeck.mLayoutCount, mDeck.mLayoutCount <= MAX_DECK_LAYOUTS_PER_SWIPE);
+    }
+
+    /**
+     * Swipes forward and back so that both directions have released views to re-use, and ends a few cards in
+     */
+    private void warmUp() {
+        for (int i = 0; i < WARM_UP_SWIPES; i++) {
+            drag(DECK_WIDTH * 0.9f, DECK_WIDTH * 0.1f, 12);
+        }
+        drag(DECK_WIDTH * 0.1f, DECK_WIDTH * 0.9f, 12);
+        layout();
+    }
+
+    /**
+     * Waits for the images of the cards in the deck to be decoded and delivered
+     */
+    private void loadImages() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        for (int i = 0; i < mDeck.getChildCount(); i++) {
+            ImageView card = (ImageView) mDeck.getChildAt(i);
+            while (card.getDrawable() == null) {
+                assertTrue("The images were not loaded", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+                ShadowLooper.runUiThreadTasks();
+            }
+        }
+    }
+
+    private void resetCounters() {
+        mAdapter.mGetViewCount = 0;
+        mAdapter.mGetItemIdCount = 0;
+        mAdapter.mInflationCount = 0;
+        mAdapter.mCardLayoutCount = 0;
+        mDeck.mLayoutCount = 0;
+    }
+
+    /**
+     * Drags from one position to the other and releases the touch once it stopped, so the cards settle without
+     * fling velocity
+     */
+    private void drag(float fromX, float toX, int moveCount) {
+        MotionEvent[] events = new MotionEvent[moveCount + 3];
+        int count = obtainDrag(events, fromX, toX, moveCount, HOLD_TIME);
+        dispatch(events, count);
+    }
+
+    /**
+     * Moves quickly from one position to the other and releases the touch while it moves
+     */
+    private void fling(float fromX, float toX) {
+        MotionEvent[] events = new MotionEvent[5];
+        int count = obtainDrag(events, fromX, toX, 3, 0);
+        dispatch(events, count);
+    }
+
+    private int obtainDrag(MotionEvent[] events, float fromX, float toX, int moveCount, long holdTime) {
+        int count = 0;
+        long downTime = nextEventTime();
+        events[count++] = obtain(downTime, downTime, MotionEvent.ACTION_DOWN, fromX);
+        for (int i = 1; i <= moveCount; i++) {
+            events[count++] = obtain(downTime, nextEventTime(), MotionEvent.ACTION_MOVE, fromX + (toX - fromX) * i / moveCount);
+        }
+        if (holdTime > 0) {
+            // The finger rests before it is lifted, so the touch has no velocity left
+            mEventTime += holdTime;
+            events[count++] = obtain(downTime, mEventTime, MotionEvent.ACTION_MOVE, toX);
+        }
+        events[count++] = obtain(downTime, nextEventTime(), MotionEvent.ACTION_UP, toX);
+        return count;
+    }
+
+    private long nextEventTime() {
+        mEventTime += TOUCH_INTERVAL;
+        return mEventTime;
+    }
+
+    private static MotionEvent obtain(long downTime, long eventTime, int action, float x) {
+        return MotionEvent.obtain(downTime, eventTime, action, x, DECK_HEIGHT / 2, 0);
+    }
+
+    private void dispatch(MotionEvent[] events, int count) {
+        for (int i = 0; i < count; i++) {
+            mDeck.dispatchTouchEvent(events[i]);
+            ShadowLooper.idleMainLooper();
+            events[i].recycle();
+        }
+        // Lets the cards settle
+        ShadowSystemClock.sleep(1000);
+        ShadowLooper.idleMainLooper();
+    }
+
+    /**
+     * Draws the cards of the deck, the View.draw of Robolectric does not draw children
+     */
+    private void draw() {
+        Bitmap bitmap = Bitmap.createBitmap(DECK_WIDTH, DECK_HEIGHT, Bitmap.Config.ARGB_8888);
+        mDeck.dispatchDraw(new Canvas(bitmap));
+    }
+
+    /**
+     * Robolectric counts frame times from 0 while the prefetcher compares them with System.nanoTime(), so every
+     * frame would look over and the prefetcher would wait for frames before it binds. Moving the frame clock ahead
+     * makes the frames look idle, like between swipes on a device.
+     */
+    private static void alignFrameClock() {
+        ReflectionHelpers.setField(Shadows.shadowOf(Choreographer.getInstance()), "nanoTime",
+                System.nanoTime() + FRAME_CLOCK_LEAD_NANOS);
+    }
+
+    private void layout() {
+        mDeck.measure(View.MeasureSpec.makeMeasureSpec(DECK_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(DECK_HEIGHT, View.MeasureSpec.EXACTLY));
+        mDeck.layout(0, 0, DECK_WIDTH, DECK_HEIGHT);
+    }
+
+    /**
+     * Counts the layout passes of the deck
+     */
+    private static class CountingDeck extends CardDeckAdapterView {
+        int mLayoutCount;
+
+        CountingDeck(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+            mLayoutCount++;
+            super.onLayout(changed, left, top, right, bottom);
+        }
+    }
+
+    /**
+     * Creates plain views as cards, layouts without background around opaque content or image views filled by an
+     * image loader, and counts what the deck asks of it. Items have stable ids, inserting an item
+     * does not change the ids of the others, and can be described to the deck with a diff.
+     */
+    private static class CountingAdapter extends BaseAdapter implements CardDeckDiff.Observable,
+            CardDeckAdapterView.PrefetchAdapter, ComponentCallbacks2 {
+        int mGetViewCount;
+        int mGetItemIdCount;
+        int mInflationCount;
+        int mCardLayoutCount;
+        boolean isOpaqueContent;
+        CardImageLoader mImageLoader;
+        private int mCount;
+        private int mInsertedPosition = -1;
+        // Added to all the ids, changing it replaces every item
+        private long mIdOffset;
+
+        CountingAdapter(int count) {
+            mCount = count;
+        }
+
+        private final ArrayList<CardDeckDiff.Observer> mDiffObservers = new ArrayList<>();
+        int mPrefetchStart = -1;
+        int mPrefetchEnd = -1;
+        int mPrefetchCardWidth;
+
+        void replaceAllIds() {
+            mIdOffset += mCount;
+            notifyDataSetChanged();
+        }
+
+        void insert(int position) {
+            mInsertedPosition = position;
+            mCount++;
+            notifyDataSetChanged();
+        }
+
+        void insertWithDiff(int position) {
+            List<Long> oldIds = getItemIds();
+            mInsertedPosition = position;
+            mCount++;
+            CardDeckDiff diff = CardDeckDiff.calculate(oldIds, getItemIds(), new CardDeckDiff.ItemCallback<Long>() {
+                @Override
+                public Object getKey(Long item) {
+                    return item;
+                }
+
+                @Override
+                public boolean areContentsTheSame(Long oldItem, Long newItem) {
+                    return true;
+                }
+            });
+            for (CardDeckDiff.Observer observer : mDiffObservers) {
+                observer.onDataSetDiff(diff);
+            }
+            notifyDataSetChanged();
+        }
+
+        private List<Long> getItemIds() {
+            Long[] ids = new Long[mCount];
+            for (int i = 0; i < mCount; i++) {
+                ids[i] = getItemId(i);
+            }
+            return Arrays.asList(ids);
+        }
+
+        @Override
+        public void registerDiffObserver(CardDeckDiff.Observer observer) {
+            mDiffObservers.add(observer);
+        }
+
+        @Override
+        public void unregisterDiffObserver(CardDeckDiff.Observer observer) {
+            mDiffObservers.remove(observer);
+        }
+
+        @Override
+        public void onPrefetchWindow(int firstPosition, int lastPosition, int cardWidth, int cardHeight) {
+            mPrefetchStart = firstPosition;
+            mPrefetchEnd = lastPosition;
+            mPrefetchCardWidth = cardWidth;
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_UI_HIDDEN && mImageLoader != null) {
+                mImageLoader.clearMemoryCache();
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return getItemId(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            mGetItemIdCount++;
+            if (mInsertedPosition < 0 || position < mInsertedPosition) {
+                return mIdOffset + position;
+            }
+            return position == mInsertedPosition ? -2 : mIdOffset + position - 1;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            mGetViewCount++;
+            if (mImageLoader != null) {
+                if (!(convertView instanceof ImageView)) {
+                    mInflationCount++;
+                    convertView = new ImageView(parent.getContext());
+                }
+                mImageLoader.display((ImageView) convertView, "/cards/" + position + ".jpg", parent.getWidth(),
+                        parent.getHeight());
+                return convertView;
+            }
+            if (convertView == null && isOpaqueContent) {
+                mInflationCount++;
+                LinearLayout card = new LinearLayout(parent.getContext()) {
+                    @Override
+                    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+                        mCardLayoutCount++;
+                        super.onLayout(changed, left, top, right, bottom);
+                    }
+                };
+                // Robolectric does not compute the opaque flags of views, the content tells it is opaque from its
+                // background as it does on a device
+                View content = new View(parent.getContext()) {
+                    @Override
+                    public boolean isOpaque() {
+                        return getBackground().getOpacity() == PixelFormat.OPAQUE && getAlpha() >= 1;
+                    }
+                };
+                content.setBackgroundColor(Color.BLUE);
+                card.addView(content, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                        ViewGroup.LayoutParams.MATCH_PARENT));
+                convertView = card;
+            } else if (convertView == null) {
+                mInflationCount++;
+                convertView = new View(parent.getContext()) {
+                    @Override
+                    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+                        mCardLayoutCount++;
+                    }
+                };
+            }
+            return convertView;
+        }
+    }
+}
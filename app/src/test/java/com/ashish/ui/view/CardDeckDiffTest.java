@@ -0,0 +1,115 @@
+package com.ashish.ui.view;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Applies the operations of diffs to the old lists and checks that they give the new lists
+ */
+public class CardDeckDiffTest {
+
+    /**
+     * Items are matched by their name, the part before ':', the rest is their content
+     */
+    private static final CardDeckDiff.ItemCallback<String> CALLBACK = new CardDeckDiff.ItemCallback<String>() {
+        @Override
+        public Object getKey(String item) {
+            return item.split(":")[0];
+        }
+
+        @Override
+        public boolean areContentsTheSame(String oldItem, String newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    @Test
+    public void insertsAndRemovesAreRanges() {
+        CardDeckDiff diff = check(Arrays.asList("a", "b", "c", "d", "e"), Arrays.asList("a", "x", "y", "d", "e", "z"));
+
+        assertEquals(3, diff.size());
+        assertEquals(CardDeckDiff.REMOVE, diff.getType(0));
+        assertEquals(1, diff.getPosition(0));
+        assertEquals(2, diff.getCount(0));
+    }
+
+    @Test
+    public void movedItemIsOneMove() {
+        CardDeckDiff diff = check(Arrays.asList("a", "b", "c", "d", "e"), Arrays.asList("b", "c", "d", "a", "e"));
+
+        assertEquals(1, diff.size());
+        assertEquals(CardDeckDiff.MOVE, diff.getType(0));
+        assertEquals(0, diff.getPosition(0));
+        assertEquals(3, diff.getToPosition(0));
+    }
+
+    @Test
+    public void changedContentIsAChange() {
+        CardDeckDiff diff = check(Arrays.asList("a", "b:1", "c"), Arrays.asList("a", "b:2", "c"));
+
+        assertEquals(1, diff.size());
+        assertEquals(CardDeckDiff.CHANGE, diff.getType(0));
+        assertEquals(1, diff.getPosition(0));
+    }
+
+    @Test
+    public void duplicateKeysAreMatchedInOrder() {
+        check(Arrays.asList("a", "b", "a", "c"), Arrays.asList("a", "c", "a", "a"));
+    }
+
+    @Test
+    public void randomListsAreTransformed() {
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            check(randomList(random), randomList(random));
+        }
+    }
+
+    private static List<String> randomList(Random random) {
+        int size = random.nextInt(30);
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add((char) ('a' + random.nextInt(40)) + ":" + random.nextInt(3));
+        }
+        return list;
+    }
+
+    private static CardDeckDiff check(List<String> oldItems, List<String> newItems) {
+        CardDeckDiff diff = CardDeckDiff.calculate(oldItems, newItems, CALLBACK);
+        List<String> list = new ArrayList<>(oldItems);
+        for (int i = 0; i < diff.size(); i++) {
+            int position = diff.getPosition(i);
+            switch (diff.getType(i)) {
+                case CardDeckDiff.INSERT:
+                    list.addAll(position, newItems.subList(position, position + diff.getCount(i)));
+                    break;
+                case CardDeckDiff.REMOVE:
+                    list.subList(position, position + diff.getCount(i)).clear();
+                    break;
+                case CardDeckDiff.MOVE:
+                    list.add(diff.getToPosition(i), list.remove(position));
+                    break;
+                case CardDeckDiff.CHANGE:
+                    for (int p = position; p < position + diff.getCount(i); p++) {
+                        list.set(p, newItems.get(p));
+                    }
+                    break;
+            }
+        }
+        assertEquals(newItems, list);
+        assertEquals(newItems.size(), diff.getNewCount());
+        for (int p = 0; p < newItems.size(); p++) {
+            int oldPosition = diff.getOldPosition(p);
+            if (oldPosition >= 0) {
+                assertEquals(p, diff.transformPosition(oldPosition));
+            }
+        }
+        return diff;
+    }
+}
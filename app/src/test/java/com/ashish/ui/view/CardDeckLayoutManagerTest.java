@@ -0,0 +1,311 @@
+package com.ashish.ui.view;
+
+import android.app.Activity;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.ashish.ui.view.CardDeckAdapterView.ZOOM_IN_SCALE_FACTOR;
+import static com.ashish.ui.view.CardDeckAdapterView.ZOOM_OUT_SCALE_FACTOR;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Scrolls a RecyclerView laid out by {@link CardDeckLayoutManager} and checks that the cards move and scale like the
+ * cards of {@link CardDeckAdapterView} do when they are dragged, and that {@link CardDeckSnapHelper} settles them on
+ * the card the deck would settle on. Scrolling forward by some distance is dragging the deck to the left by that
+ * distance, scrolling back is dragging it to the right.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class CardDeckLayoutManagerTest {
+
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 800;
+    private static final int ITEM_COUNT = 20;
+    private static final int POSITION = 5;
+    private static final float SCALE_DELTA = 0.001f;
+
+    private RecyclerView mRecyclerView;
+    private CardDeckLayoutManager mLayoutManager;
+    private CardDeckSnapHelper mSnapHelper;
+    private CardAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        mRecyclerView = new RecyclerView(activity);
+        mLayoutManager = new CardDeckLayoutManager();
+        mRecyclerView.setLayoutManager(mLayoutManager);
+        // Items are moved right away, without animations
+        mRecyclerView.setItemAnimator(null);
+        mAdapter = new CardAdapter(ITEM_COUNT);
+        mRecyclerView.setAdapter(mAdapter);
+        mSnapHelper = new CardDeckSnapHelper();
+        FrameLayout root = new FrameLayout(activity);
+        root.addView(mRecyclerView, new FrameLayout.LayoutParams(WIDTH, HEIGHT));
+        activity.setContentView(root);
+        mLayoutManager.scrollToPosition(POSITION);
+        layout();
+    }
+
+    @Test
+    public void restingDeckShowsTheCardOnDisplayOverItsNeighbours() {
+        assertEquals(POSITION, mLayoutManager.getCurrentPosition());
+        assertEquals(3, mRecyclerView.getChildCount());
+        assertCard(POSITION - 1, -WIDTH, ZOOM_IN_SCALE_FACTOR);
+        assertCard(POSITION, 0, ZOOM_IN_SCALE_FACTOR);
+        assertCard(POSITION + 1, WIDTH, ZOOM_OUT_SCALE_FACTOR);
+        // Lower positions are drawn above higher positions
+        for (int i = 1; i < mRecyclerView.getChildCount(); i++) {
+            assertEquals(getItem(mRecyclerView.getChildAt(i - 1)) - 1, getItem(mRecyclerView.getChildAt(i)));
+        }
+    }
+
+    @Test
+    public void scrollingForwardMovesTheCardsLikeALeftDrag() {
+        int deltaX = WIDTH / 4;
+        mRecyclerView.scrollBy(deltaX, 0);
+
+        float ratio = (float) deltaX / WIDTH;
+        assertEquals(POSITION, mLayoutManager.getCurrentPosition());
+        assertCard(POSITION, -deltaX, ZOOM_IN_SCALE_FACTOR);
+        assertCard(POSITION + 1, 0, ZOOM_OUT_SCALE_FACTOR + (ZOOM_IN_SCALE_FACTOR - ZOOM_OUT_SCALE_FACTOR) * ratio);
+        // The card after the one coming under the card on display waits off the right edge
+        assertCard(POSITION + 2, WIDTH, ZOOM_OUT_SCALE_FACTOR);
+    }
+
+    @Test
+    public void scrollingBackMovesTheCardsLikeARightDrag() {
+        int deltaX = WIDTH / 4;
+        mRecyclerView.scrollBy(-deltaX, 0);
+
+        float ratio = (float) deltaX / WIDTH;
+        assertCard(POSITION - 1, -WIDTH + deltaX, ZOOM_IN_SCALE_FACTOR);
+        assertCard(POSITION, 0, ZOOM_IN_SCALE_FACTOR - (ZOOM_IN_SCALE_FACTOR - ZOOM_OUT_SCALE_FACTOR) * ratio);
+    }
+
+    @Test
+    public void releaseHalfWayCompletesTheSwipe() {
+        mRecyclerView.scrollBy(WIDTH / 2, 0);
+        settle();
+
+        assertEquals(POSITION + 1, mLayoutManager.getCurrentPosition());
+        assertCard(POSITION, -WIDTH, ZOOM_IN_SCALE_FACTOR);
+        assertCard(POSITION + 1, 0, ZOOM_IN_SCALE_FACTOR);
+        assertCard(POSITION + 2, WIDTH, ZOOM_OUT_SCALE_FACTOR);
+    }
+
+    @Test
+    public void releaseBeforeHalfWayCancelsTheSwipe() {
+        mRecyclerView.scrollBy(WIDTH / 2 - 1, 0);
+        settle();
+
+        assertEquals(POSITION, mLayoutManager.getCurrentPosition());
+        assertCard(POSITION, 0, ZOOM_IN_SCALE_FACTOR);
+        assertCard(POSITION + 1, WIDTH, ZOOM_OUT_SCALE_FACTOR);
+    }
+
+    @Test
+    public void flingsGoToTheNextCardInTheirDirection() {
+        assertEquals(POSITION + 1, mSnapHelper.findTargetSnapPosition(mLayoutManager, 1000, 0));
+        assertEquals(POSITION - 1, mSnapHelper.findTargetSnapPosition(mLayoutManager, -1000, 0));
+
+        // Flinging back a card that slid out part of the way brings it back
+        mRecyclerView.scrollBy(WIDTH / 4, 0);
+        assertEquals(POSITION + 1, mSnapHelper.findTargetSnapPosition(mLayoutManager, 1000, 0));
+        assertEquals(POSITION, mSnapHelper.findTargetSnapPosition(mLayoutManager, -1000, 0));
+    }
+
+    @Test
+    public void itemsAddedBeforeTheCardOnDisplayKeepItOnDisplay() {
+        mAdapter.insert(2);
+        layout();
+
+        assertEquals(POSITION + 1, mLayoutManager.getCurrentPosition());
+        assertEquals(POSITION, getItem(mLayoutManager.findViewByPosition(POSITION + 1)));
+        assertCard(POSITION + 1, 0, ZOOM_IN_SCALE_FACTOR);
+    }
+
+    @Test
+    public void itemsAddedAfterTheCardOnDisplayDoNotMoveIt() {
+        mAdapter.insert(POSITION + 1);
+        layout();
+
+        assertEquals(POSITION, mLayoutManager.getCurrentPosition());
+        assertEquals(POSITION, getItem(mLayoutManager.findViewByPosition(POSITION)));
+    }
+
+    @Test
+    public void itemsRemovedBeforeTheCardOnDisplayKeepItOnDisplay() {
+        mAdapter.remove(2, 2);
+        layout();
+
+        assertEquals(POSITION - 2, mLayoutManager.getCurrentPosition());
+        assertEquals(POSITION, getItem(mLayoutManager.findViewByPosition(POSITION - 2)));
+        assertCard(POSITION - 2, 0, ZOOM_IN_SCALE_FACTOR);
+    }
+
+    @Test
+    public void removedCardOnDisplayIsReplacedByTheNextCard() {
+        mAdapter.remove(POSITION, 1);
+        layout();
+
+        assertEquals(POSITION, mLayoutManager.getCurrentPosition());
+        assertEquals(POSITION + 1, getItem(mLayoutManager.findViewByPosition(POSITION)));
+    }
+
+    @Test
+    public void movedItemsKeepTheCardOnDisplay() {
+        // The card on display itself
+        mAdapter.move(POSITION, POSITION + 5);
+        layout();
+        assertEquals(POSITION + 5, mLayoutManager.getCurrentPosition());
+        assertEquals(POSITION, getItem(mLayoutManager.findViewByPosition(POSITION + 5)));
+
+        // A card from before it to after it
+        mAdapter.move(0, POSITION + 7);
+        layout();
+        assertEquals(POSITION + 4, mLayoutManager.getCurrentPosition());
+        assertEquals(POSITION, getItem(mLayoutManager.findViewByPosition(POSITION + 4)));
+
+        // A card from after it to before it
+        mAdapter.move(ITEM_COUNT - 1, 0);
+        layout();
+        assertEquals(POSITION + 5, mLayoutManager.getCurrentPosition());
+        assertEquals(POSITION, getItem(mLayoutManager.findViewByPosition(POSITION + 5)));
+    }
+
+    @Test
+    public void prefetchAnnouncesTheCardAfterTheNeighbours() {
+        // At rest the neighbours are laid out, the cards after them are a whole card away
+        assertPrefetch(1, POSITION + 2, WIDTH);
+        assertPrefetch(-1, POSITION - 2, WIDTH);
+
+        // While the card on display slides out, the card after the next one comes closer and the card on display
+        // is the one that comes back
+        int deltaX = WIDTH / 4;
+        mRecyclerView.scrollBy(deltaX, 0);
+        assertPrefetch(1, POSITION + 2, WIDTH - deltaX);
+        assertPrefetch(-1, POSITION - 1, deltaX);
+    }
+
+    @Test
+    public void prefetchStopsAtTheEndsOfTheDeck() {
+        mLayoutManager.scrollToPosition(0);
+        layout();
+        assertPrefetch(-1, RecyclerView.NO_POSITION, 0);
+
+        mLayoutManager.scrollToPosition(ITEM_COUNT - 1);
+        layout();
+        assertPrefetch(1, RecyclerView.NO_POSITION, 0);
+    }
+
+    private void assertCard(int position, int left, float scale) {
+        View card = mLayoutManager.findViewByPosition(position);
+        assertEquals("left of card " + position, left, card.getLeft());
+        assertEquals("scale of card " + position, scale, card.getScaleX(), SCALE_DELTA);
+        assertEquals("scale of card " + position, scale, card.getScaleY(), SCALE_DELTA);
+    }
+
+    /**
+     * Checks the only position announced for a scroll in the given direction, NO_POSITION if none should be
+     */
+    private void assertPrefetch(int dx, int position, int distance) {
+        final List<int[]> positions = new ArrayList<>();
+        RecyclerView.State state = new RecyclerView.State();
+        ReflectionHelpers.setField(state, "mItemCount", mAdapter.getItemCount());
+        mLayoutManager.collectAdjacentPrefetchPositions(dx, 0, state, new RecyclerView.LayoutManager.LayoutPrefetchRegistry() {
+            @Override
+            public void addPosition(int layoutPosition, int pixelDistance) {
+                positions.add(new int[] {layoutPosition, pixelDistance});
+            }
+        });
+        if (position == RecyclerView.NO_POSITION) {
+            assertEquals(0, positions.size());
+            return;
+        }
+        assertEquals(1, positions.size());
+        assertEquals("prefetch position", position, positions.get(0)[0]);
+        assertEquals("prefetch distance", distance, positions.get(0)[1]);
+    }
+
+    /**
+     * Scrolls by what the snap helper asks for once the touch is released without velocity, like its settle
+     * animation does
+     */
+    private void settle() {
+        View snapView = mSnapHelper.findSnapView(mLayoutManager);
+        int[] distance = mSnapHelper.calculateDistanceToFinalSnap(mLayoutManager, snapView);
+        assertEquals(0, distance[1]);
+        mRecyclerView.scrollBy(distance[0], 0);
+    }
+
+    private void layout() {
+        mRecyclerView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mRecyclerView.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private static int getItem(View card) {
+        return (Integer) card.getTag();
+    }
+
+    /**
+     * Plain views as cards, each tagged with its item. Items are numbered in their initial order.
+     */
+    private static class CardAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        private final List<Integer> mItems = new ArrayList<>();
+        private int mNextItem;
+
+        CardAdapter(int count) {
+            for (int i = 0; i < count; i++) {
+                mItems.add(mNextItem++);
+            }
+        }
+
+        void insert(int position) {
+            mItems.add(position, mNextItem++);
+            notifyItemInserted(position);
+        }
+
+        void remove(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                mItems.remove(position);
+            }
+            notifyItemRangeRemoved(position, count);
+        }
+
+        void move(int from, int to) {
+            mItems.add(to, mItems.remove(from));
+            notifyItemMoved(from, to);
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return new RecyclerView.ViewHolder(new View(parent.getContext())) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            holder.itemView.setTag(mItems.get(position));
+        }
+
+        @Override
+        public int getItemCount() {
+            return mItems.size();
+        }
+    }
+}
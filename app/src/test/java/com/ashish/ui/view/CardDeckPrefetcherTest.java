@@ -0,0 +1,81 @@
+package com.ashish.ui.view;
+
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the prefetcher frame by frame with a fake clock that only moves when cards are bound or a frame starts.
+ * The frames are started by the test, the view does not run what the prefetcher posts to it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class CardDeckPrefetcherTest {
+
+    // Longer than a few frames
+    private static final long SLOW_BIND_NANOS = 100000000L;
+    private static final long BIND_NANOS = 2000000L;
+    private static final int CARD_COUNT = 3;
+    // The average of the slow bind decays by a quarter per frame until a bind fits, ~7 frames at 60Hz
+    private static final int MAX_FRAMES = 10;
+
+    private int mPendingCount = CARD_COUNT;
+    private int mBindCount;
+    private long mNowNanos;
+    private long mFrameDeadlineNanos;
+    private CardDeckPrefetcher mPrefetcher;
+
+    @Test
+    public void slowBindDoesNotStopPrefetching() {
+        View view = new View(RuntimeEnvironment.application) {
+            @Override
+            public boolean post(Runnable action) {
+                return true;
+            }
+        };
+        mPrefetcher = new CardDeckPrefetcher(view,
+                new CardDeckPrefetcher.Callback() {
+                    @Override
+                    public boolean hasPendingCard() {
+                        return mPendingCount > 0;
+                    }
+
+                    @Override
+                    public void prefetchCard() {
+                        // Once a bind was timed, a card is only bound if it is expected to fit in the frame
+                        if (mBindCount > 0) {
+                            assertTrue("bind " + mBindCount + " does not fit",
+                                    mNowNanos + mPrefetcher.getAverageBindNanos() <= mFrameDeadlineNanos);
+                        }
+                        mPendingCount--;
+                        mNowNanos += mBindCount++ == 0 ? SLOW_BIND_NANOS : BIND_NANOS;
+                    }
+                }) {
+            @Override
+            long nanoTime() {
+                return mNowNanos;
+            }
+        };
+
+        long frameInterval = CardDeckPrefetcher.getFrameIntervalNanos(view);
+        int frames = 0;
+        while (mPendingCount > 0 && frames < MAX_FRAMES) {
+            // The next frame starts at the first vsync after the work of the previous one
+            mNowNanos = (mNowNanos / frameInterval + 1) * frameInterval;
+            mFrameDeadlineNanos = mNowNanos + frameInterval;
+            mPrefetcher.doFrame(mNowNanos);
+            mPrefetcher.run();
+            frames++;
+        }
+
+        assertEquals(CARD_COUNT, mBindCount);
+        mPrefetcher.cancel();
+    }
+}
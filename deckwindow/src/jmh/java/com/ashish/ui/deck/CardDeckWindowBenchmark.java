@@ -0,0 +1,134 @@
+package com.ashish.ui.deck;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the bookkeeping cost of the deck window on its own, with a binder that does no work, for decks
+ * from a few items to millions of items. The cost of moving the window should not depend on the size of the deck.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CardDeckWindowBenchmark {
+
+    private static final int JUMP_COUNT = 1024;
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int count;
+
+    @Param({"1", "4"})
+    public int lookSize;
+
+    private CardDeckWindow<Integer> mWindow;
+    private final int[] mJumps = new int[JUMP_COUNT];
+    private int mJumpIndex;
+    private Blackhole mBlackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        mBlackhole = blackhole;
+        mWindow = new CardDeckWindow<>(mBinder, lookSize, lookSize);
+        mWindow.setCount(count);
+        mWindow.setPosition(0);
+        mWindow.fill();
+        // Pre-computed pseudo random positions so that the benchmark does not measure the random generator
+        int seed = 0x2545F491;
+        for (int i = 0; i < JUMP_COUNT; i++) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            mJumps[i] = (seed & Integer.MAX_VALUE) % count;
+        }
+    }
+
+    // Items are pre-boxed positions, binding them does not allocate
+    private final CardDeckWindow.Binder<Integer> mBinder = new CardDeckWindow.Binder<Integer>() {
+        @Override
+        public Integer bind(int position, boolean atTop) {
+            return position & 127;
+        }
+
+        @Override
+        public void release(Integer item) {
+            mBlackhole.consume(item);
+        }
+    };
+
+    /**
+     * Swipes to the next card and binds the card entering the window, starting over at the end of the deck
+     */
+    @Benchmark
+    public int swipeNext() {
+        if (!mWindow.moveToNext()) {
+            mWindow.setPosition(0);
+        }
+        mWindow.fill();
+        return mWindow.getPosition();
+    }
+
+    /**
+     * Swipes back and forth around the same card, the window keeps binding and releasing the same positions
+     */
+    @Benchmark
+    public int swipeBackAndForth() {
+        if (!mWindow.moveToNext()) {
+            mWindow.moveToPrev();
+        } else {
+            mWindow.fill();
+            mWindow.moveToPrev();
+        }
+        mWindow.fill();
+        return mWindow.getPosition();
+    }
+
+    /**
+     * Jumps to random cards, every jump rebinds the whole window
+     */
+    @Benchmark
+    public int jump() {
+        mWindow.setPosition(mJumps[mJumpIndex]);
+        mJumpIndex = (mJumpIndex + 1) & (JUMP_COUNT - 1);
+        mWindow.fill();
+        return mWindow.getPosition();
+    }
+
+    /**
+     * Removes the cards after the card on display then adds them back, the way a deck whose last cards are
+     * removed and inserted again changes its count. Only the cards cut from the window are released and bound again.
+     */
+    @Benchmark
+    public int changeCount() {
+        // The card on display is the last card to stay, its look ahead goes beyond the shrunk deck
+        int position = count - 1 - lookSize;
+        mWindow.setPosition(position);
+        mWindow.setCount(position + 1);
+        mWindow.fill();
+        mWindow.setCount(count);
+        mWindow.fill();
+        return mWindow.size();
+    }
+
+    /**
+     * Binds the window one card at a time the way the idle time prefetcher does
+     */
+    @Benchmark
+    public int prefetchNext() {
+        if (!mWindow.moveToNext()) {
+            mWindow.setPosition(0);
+        }
+        while (mWindow.bindNextPending()) {
+            // Keep binding until the window is full
+        }
+        return mWindow.size();
+    }
+}
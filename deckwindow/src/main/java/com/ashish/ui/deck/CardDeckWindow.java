@@ -0,0 +1,314 @@
+package com.ashish.ui.deck;
+
+/**
+ * Keeps track of which items of a deck are bound around the item on display. The window covers up to
+ * lookBehind items before the item on display and up to lookAhead items after it, clamped to the items of the
+ * deck. The bound items are kept in a ring buffer keyed by position, so moving the window by one item costs one
+ * release and at most one bind whatever the size of the window or of the deck.
+ * <p>
+ * The window does not create or release anything itself, it asks its {@link Binder} to. It has no dependency on
+ * Android so that it can be benchmarked and tested on a plain JVM.
+ */
+public class CardDeckWindow<T> {
+
+    /**
+     * Creates and releases the items of the window
+     */
+    public interface Binder<T> {
+        /**
+         * Binds the item at the given position
+         * @param position Position of the item in the deck
+         * @param atTop Indicates the item is added before the items already bound, otherwise it is added after them
+         */
+        T bind(int position, boolean atTop);
+
+        /**
+         * Releases an item that left the window
+         * @param item
+         */
+        void release(T item);
+    }
+
+    private final Binder<T> mBinder;
+    private final CardRingBuffer<T> mBuffer;
+    private int mLookBehind;
+    private int mLookAhead;
+    // Position of the item on display (the 1st item of the deck is at position = 0)
+    private int mPosition;
+    // Total number of items in the deck
+    private int mCount;
+
+    public CardDeckWindow(Binder<T> binder, int lookBehind, int lookAhead) {
+        checkWindowSize(lookBehind, lookAhead);
+        mBinder = binder;
+        mLookBehind = lookBehind;
+        mLookAhead = lookAhead;
+        mBuffer = new CardRingBuffer<>(lookBehind + 1 + lookAhead);
+    }
+
+    /**
+     * Changes the number of items kept before and after the item on display. The bound items that are outside of
+     * the new window are released, the others stay bound.
+     * @param lookBehind At least 1
+     * @param lookAhead At least 1
+     */
+    public void setWindowSize(int lookBehind, int lookAhead) {
+        checkWindowSize(lookBehind, lookAhead);
+        mLookBehind = lookBehind;
+        mLookAhead = lookAhead;
+        trim();
+        mBuffer.setCapacity(lookBehind + 1 + lookAhead);
+    }
+
+    private static void checkWindowSize(int lookBehind, int lookAhead) {
+        if (lookBehind < 1 || lookAhead < 1) {
+            throw new IllegalArgumentException("lookBehind and lookAhead should be at least 1");
+        }
+    }
+
+    public int getLookBehind() {
+        return mLookBehind;
+    }
+
+    public int getLookAhead() {
+        return mLookAhead;
+    }
+
+    /**
+     * Returns the maximum number of items bound at the same time
+     */
+    public int getCapacity() {
+        return mBuffer.getCapacity();
+    }
+
+    public int getPosition() {
+        return mPosition;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the first position of the window, i.e. the first position that should be bound
+     */
+    public int getWindowStart() {
+        return Math.max(0, mPosition - mLookBehind);
+    }
+
+    /**
+     * Returns the last position of the window, i.e. the last position that should be bound
+     */
+    public int getWindowEnd() {
+        return Math.min(mCount - 1, mPosition + mLookAhead);
+    }
+
+    /**
+     * Returns the number of items currently bound
+     */
+    public int size() {
+        return mBuffer.size();
+    }
+
+    public boolean isEmpty() {
+        return mBuffer.isEmpty();
+    }
+
+    /**
+     * Returns the first bound position. Only valid if the window is not empty.
+     */
+    public int getFirstBoundPosition() {
+        return mBuffer.getFirstPosition();
+    }
+
+    /**
+     * Returns the last bound position. Only valid if the window is not empty.
+     */
+    public int getLastBoundPosition() {
+        return mBuffer.getLastPosition();
+    }
+
+    /**
+     * Returns the item bound for the position or null if it is not bound
+     * @param position
+     */
+    public T get(int position) {
+        return mBuffer.get(position);
+    }
+
+    /**
+     * Returns the bound item at the given offset from the first bound position
+     * @param offset
+     */
+    public T getAt(int offset) {
+        return mBuffer.getAt(offset);
+    }
+
+    /**
+     * Changes the number of items of the deck. The position on display is moved to the last item if it is past the
+     * end, and the items that are no longer in the window are released.
+     * @param count
+     */
+    public void setCount(int count) {
+        mCount = Math.max(0, count);
+        if (mPosition >= mCount) {
+            mPosition = Math.max(0, mCount - 1);
+        }
+        trim();
+    }
+
+    /**
+     * Moves the window to the given position. Items that are no longer in the window are released and the item on
+     * display is bound if it is not already. The other items of the window are bound by {@link #fill(int, int)} or
+     * {@link #bindNextPending()}. Positions out of the deck go to the 1st item.
+     * @param position
+     */
+    public void setPosition(int position) {
+        if (position < 0 || position >= mCount) {
+            position = 0;
+        }
+        mPosition = position;
+        trim();
+        ensureCurrent();
+    }
+
+    /**
+     * Moves the window to the next item
+     * @return false if the item on display is the last one
+     */
+    public boolean moveToNext() {
+        if (mPosition + 1 >= mCount) {
+            return false;
+        }
+        mPosition++;
+        trim();
+        ensureCurrent();
+        return true;
+    }
+
+    /**
+     * Moves the window to the previous item
+     * @return false if the item on display is the first one
+     */
+    public boolean moveToPrev() {
+        if (mPosition <= 0) {
+            return false;
+        }
+        mPosition--;
+        trim();
+        ensureCurrent();
+        return true;
+    }
+
+    /**
+     * Binds the missing items up to the given distance from the item on display (and within the window)
+     * @param lookBehind
+     * @param lookAhead
+     */
+    public void fill(int lookBehind, int lookAhead) {
+        if (mBuffer.isEmpty()) {
+            return;
+        }
+        int firstPosition = Math.max(getWindowStart(), mPosition - lookBehind);
+        int lastPosition = Math.min(getWindowEnd(), mPosition + lookAhead);
+        // Previous items are added before the bound items, next items are added after them
+        while (mBuffer.getFirstPosition() > firstPosition) {
+            mBuffer.addFirst(mBinder.bind(mBuffer.getFirstPosition() - 1, true));
+        }
+        while (mBuffer.getLastPosition() < lastPosition) {
+            mBuffer.addLast(mBinder.bind(mBuffer.getLastPosition() + 1, false));
+        }
+    }
+
+    /**
+     * Binds all the missing items of the window
+     */
+    public void fill() {
+        fill(mLookBehind, mLookAhead);
+    }
+
+    /**
+     * @return true if some items of the window are not bound
+     */
+    public boolean hasPending() {
+        if (mBuffer.isEmpty()) {
+            return false;
+        }
+        return mBuffer.getFirstPosition() > getWindowStart() || mBuffer.getLastPosition() < getWindowEnd();
+    }
+
+    /**
+     * Binds the missing item of the window that is the closest to the item on display. On a tie the next item
+     * is bound before the previous one.
+     * @return false if there was nothing left to bind
+     */
+    public boolean bindNextPending() {
+        if (mBuffer.isEmpty()) {
+            return false;
+        }
+        int behindDistance = mPosition - mBuffer.getFirstPosition();
+        int aheadDistance = mBuffer.getLastPosition() - mPosition;
+        boolean canAddBehind = mBuffer.getFirstPosition() > getWindowStart();
+        boolean canAddAhead = mBuffer.getLastPosition() < getWindowEnd();
+        if (canAddAhead && (!canAddBehind || aheadDistance <= behindDistance)) {
+            mBuffer.addLast(mBinder.bind(mBuffer.getLastPosition() + 1, false));
+            return true;
+        } else if (canAddBehind) {
+            mBuffer.addFirst(mBinder.bind(mBuffer.getFirstPosition() - 1, true));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Releases all the bound items
+     */
+    public void releaseAll() {
+        while (!mBuffer.isEmpty()) {
+            mBinder.release(mBuffer.removeFirst());
+        }
+        mBuffer.clear();
+    }
+
+    /**
+     * Removes all the bound items without releasing them, in position order. The caller takes them over.
+     * @param out Array with room for {@link #getCapacity()} items
+     * @return The number of items written to out
+     */
+    public int drainTo(T[] out) {
+        int count = 0;
+        while (!mBuffer.isEmpty()) {
+            out[count++] = mBuffer.removeFirst();
+        }
+        mBuffer.clear();
+        return count;
+    }
+
+    private void trim() {
+        if (mCount == 0) {
+            releaseAll();
+            return;
+        }
+        int firstPosition = getWindowStart();
+        int lastPosition = getWindowEnd();
+        while (!mBuffer.isEmpty() && mBuffer.getFirstPosition() < firstPosition) {
+            mBinder.release(mBuffer.removeFirst());
+        }
+        while (!mBuffer.isEmpty() && mBuffer.getLastPosition() > lastPosition) {
+            mBinder.release(mBuffer.removeLast());
+        }
+    }
+
+    private void ensureCurrent() {
+        if (mCount == 0) {
+            return;
+        }
+        if (mBuffer.isEmpty()) {
+            mBuffer.start(mPosition, mBinder.bind(mPosition, true));
+        } else {
+            // The window always overlaps what is left after trimming, so the item on display is reached by
+            // extending the bound range towards it
+            fill(0, 0);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.ashish.ui.deck;
+
+/**
+ * Fixed capacity ring buffer that keeps the items of a contiguous range of positions.
+ * The item at the start of the ring always belongs to {@link #getFirstPosition()} and the following
+ * items belong to the consecutive positions. Adding or removing at either end is O(1) and
+ * never moves the other items around.
+ */
+class CardRingBuffer<T> {
+
+    private Object[] mItems;
+    // Index in mItems of the item with the lowest position
+    private int mHead;
+    private int mSize;
+    // Position of the item at mHead
+    private int mFirstPosition;
+
+    CardRingBuffer(int capacity) {
+        mItems = new Object[capacity];
+    }
+
+    int getCapacity() {
+        return mItems.length;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    boolean isFull() {
+        return mSize == mItems.length;
+    }
+
+    int getFirstPosition() {
+        return mFirstPosition;
+    }
+
+    int getLastPosition() {
+        return mFirstPosition + mSize - 1;
+    }
+
+    boolean contains(int position) {
+        return position >= mFirstPosition && position < mFirstPosition + mSize;
+    }
+
+    /**
+     * Returns the item stored for the position or null if the position is not in the buffer
+     * @param position
+     */
+    @SuppressWarnings("unchecked")
+    T get(int position) {
+        if (!contains(position)) {
+            return null;
+        }
+        return (T) mItems[(mHead + position - mFirstPosition) % mItems.length];
+    }
+
+    /**
+     * Returns the item at the given offset from the start of the buffer
+     * @param offset
+     */
+    @SuppressWarnings("unchecked")
+    T getAt(int offset) {
+        return (T) mItems[(mHead + offset) % mItems.length];
+    }
+
+    /**
+     * Starts the buffer with a single item for the given position. The buffer must be empty.
+     * @param position
+     * @param item
+     */
+    void start(int position, T item) {
+        mHead = 0;
+        mSize = 1;
+        mFirstPosition = position;
+        mItems[0] = item;
+    }
+
+    /**
+     * Adds the item for the position that follows {@link #getLastPosition()}
+     * @param item
+     */
+    void addLast(T item) {
+        mItems[(mHead + mSize) % mItems.length] = item;
+        mSize++;
+    }
+
+    /**
+     * Adds the item for the position that precedes {@link #getFirstPosition()}
+     * @param item
+     */
+    void addFirst(T item) {
+        mHead = (mHead - 1 + mItems.length) % mItems.length;
+        mItems[mHead] = item;
+        mSize++;
+        mFirstPosition--;
+    }
+
+    @SuppressWarnings("unchecked")
+    T removeFirst() {
+        T item = (T) mItems[mHead];
+        mItems[mHead] = null;
+        mHead = (mHead + 1) % mItems.length;
+        mSize--;
+        mFirstPosition++;
+        return item;
+    }
+
+    @SuppressWarnings("unchecked")
+    T removeLast() {
+        int index = (mHead + mSize - 1) % mItems.length;
+        T item = (T) mItems[index];
+        mItems[index] = null;
+        mSize--;
+        return item;
+    }
+
+    void clear() {
+        for (int i = 0; i < mItems.length; i++) {
+            mItems[i] = null;
+        }
+        mHead = 0;
+        mSize = 0;
+    }
+
+    /**
+     * Changes the capacity of the buffer, keeping its items. The items must fit in the new capacity.
+     * @param capacity
+     */
+    void setCapacity(int capacity) {
+        Object[] items = new Object[capacity];
+        for (int i = 0; i < mSize; i++) {
+            items[i] = mItems[(mHead + i) % mItems.length];
+        }
+        mItems = items;
+        mHead = 0;
+    }
+}
@@ -0,0 +1,145 @@
+package com.ashish.ui.deck;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CardDeckWindowTest {
+
+    private final List<Integer> mBound = new ArrayList<>();
+    private CardDeckWindow<Integer> mWindow;
+
+    @Before
+    public void setUp() {
+        mBound.clear();
+        mWindow = new CardDeckWindow<>(new CardDeckWindow.Binder<Integer>() {
+            @Override
+            public Integer bind(int position, boolean atTop) {
+                assertFalse("position bound twice", mBound.contains(position));
+                mBound.add(position);
+                return position;
+            }
+
+            @Override
+            public void release(Integer item) {
+                assertTrue("item released twice", mBound.remove(item));
+            }
+        }, 2, 3);
+    }
+
+    @Test
+    public void fillBindsTheWindowAroundThePosition() {
+        mWindow.setCount(10);
+        mWindow.setPosition(5);
+        assertEquals(1, mWindow.size());
+        mWindow.fill();
+        assertEquals(3, mWindow.getFirstBoundPosition());
+        assertEquals(8, mWindow.getLastBoundPosition());
+        assertNull(mWindow.get(2));
+        assertEquals(Integer.valueOf(8), mWindow.get(8));
+    }
+
+    @Test
+    public void windowIsClampedToTheDeck() {
+        mWindow.setCount(2);
+        mWindow.setPosition(1);
+        mWindow.fill();
+        assertEquals(2, mWindow.size());
+        assertFalse(mWindow.moveToNext());
+        mWindow.setCount(1);
+        assertEquals(0, mWindow.getPosition());
+        assertEquals(1, mBound.size());
+        mWindow.setCount(0);
+        assertTrue(mWindow.isEmpty());
+        assertTrue(mBound.isEmpty());
+    }
+
+    @Test
+    public void pendingItemsAreBoundClosestFirst() {
+        mWindow.setCount(10);
+        mWindow.setPosition(5);
+        int[] expected = {6, 4, 7, 3, 8};
+        for (int position : expected) {
+            assertTrue(mWindow.hasPending());
+            assertTrue(mWindow.bindNextPending());
+            assertEquals(position, (int) mBound.get(mBound.size() - 1));
+        }
+        assertFalse(mWindow.hasPending());
+        assertFalse(mWindow.bindNextPending());
+    }
+
+    @Test
+    public void resizingKeepsTheItemsInTheNewWindow() {
+        mWindow.setCount(10);
+        mWindow.setPosition(5);
+        mWindow.fill();
+        mWindow.setWindowSize(1, 1);
+        assertEquals(4, mWindow.getFirstBoundPosition());
+        assertEquals(6, mWindow.getLastBoundPosition());
+        assertEquals(3, mBound.size());
+        assertEquals(Integer.valueOf(5), mWindow.get(5));
+        mWindow.setWindowSize(2, 3);
+        assertTrue(mWindow.hasPending());
+        mWindow.fill();
+        assertEquals(3, mWindow.getFirstBoundPosition());
+        assertEquals(8, mWindow.getLastBoundPosition());
+        assertConsistent();
+    }
+
+    @Test
+    public void randomOperationsKeepTheWindowConsistent() {
+        Random random = new Random(42);
+        mWindow.setCount(50);
+        mWindow.setPosition(0);
+        for (int i = 0; i < 10000; i++) {
+            switch (random.nextInt(6)) {
+                case 0:
+                    mWindow.moveToNext();
+                    break;
+                case 1:
+                    mWindow.moveToPrev();
+                    break;
+                case 2:
+                    mWindow.setPosition(random.nextInt(60) - 5);
+                    break;
+                case 3:
+                    mWindow.setCount(random.nextInt(60));
+                    break;
+                case 4:
+                    mWindow.bindNextPending();
+                    break;
+                default:
+                    mWindow.fill();
+                    break;
+            }
+            assertConsistent();
+        }
+        mWindow.releaseAll();
+        assertTrue(mBound.isEmpty());
+    }
+
+    private void assertConsistent() {
+        assertEquals(mBound.size(), mWindow.size());
+        if (mWindow.getCount() == 0) {
+            assertTrue(mWindow.isEmpty());
+            return;
+        }
+        assertTrue(mWindow.getPosition() < mWindow.getCount());
+        if (mWindow.isEmpty()) {
+            return;
+        }
+        assertTrue(mWindow.getFirstBoundPosition() >= mWindow.getWindowStart());
+        assertTrue(mWindow.getLastBoundPosition() <= mWindow.getWindowEnd());
+        for (int i = 0; i < mWindow.size(); i++) {
+            assertEquals(mWindow.getFirstBoundPosition() + i, (int) mWindow.getAt(i));
+        }
+    }
+}